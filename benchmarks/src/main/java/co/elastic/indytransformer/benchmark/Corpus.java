@@ -0,0 +1,64 @@
+package co.elastic.indytransformer.benchmark;
+
+import co.elastic.indytransformer.AdviceCorpusGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sources used as benchmark input.
+ */
+public class Corpus {
+
+    public static final String TEST_SOURCES = "test-sources";
+    public static final String GENERATED = "generated";
+
+    private static final String[] TEST_SOURCE_NAMES = {
+            "ComplexEnter.java",
+            "EnterAndAssignmentsCombined.java",
+            "EnterAndLocalsCombined.java",
+            "NestedClass.java",
+            "PreserveOrderInOptimizedReturns.java",
+            "ReadWriteReturn.java",
+            "SingleLocalAdvice.java",
+            "WrapArgumentAdvice.java",
+            "WriteFieldAndReturn.java",
+            "WriteOnlyReturn.java"
+    };
+
+    /**
+     * A corpus of advice-only files, which are larger and more deeply nested than the test sources.
+     */
+    private static final AdviceCorpusGenerator.Config GENERATED_CONFIG = new AdviceCorpusGenerator.Config()
+            .fileCount(100)
+            .adviceRatio(1.0)
+            .maxAdviceClassesPerFile(10)
+            .methodSize(20)
+            .nestingDepth(2);
+
+    public static List<String> load(String corpus) {
+        return switch (corpus) {
+            case TEST_SOURCES -> loadTestSources();
+            case GENERATED -> new AdviceCorpusGenerator(GENERATED_CONFIG).generate().stream()
+                    .map(AdviceCorpusGenerator.GeneratedFile::source)
+                    .toList();
+            default -> throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        };
+    }
+
+    private static List<String> loadTestSources() {
+        List<String> sources = new ArrayList<>();
+        for (String name : TEST_SOURCE_NAMES) {
+            try (InputStream stream = Corpus.class.getResourceAsStream("/corpus/" + name)) {
+                sources.add(new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sources;
+    }
+}
@@ -0,0 +1,136 @@
+package co.elastic.indytransformer.benchmark;
+
+import co.elastic.indytransformer.AdviceTransformationPlan;
+import co.elastic.indytransformer.AdviceTransformer;
+import co.elastic.indytransformer.AdviceTypeSolver;
+import co.elastic.indytransformer.SplicePrinter;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the phases of the transformation separately: parsing, planning, rewriting and printing.
+ * Each benchmark processes the entire corpus per invocation.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar -prof gc} to additionally report allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformPhasesBenchmark {
+
+    @Param({Corpus.TEST_SOURCES, Corpus.GENERATED})
+    public String corpus;
+
+    private AdviceTransformer transformer;
+    private List<byte[]> sources;
+    private List<CompilationUnit> transformedSources;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        transformer = new AdviceTransformer();
+        sources = Corpus.load(corpus).stream()
+                .map(source -> source.getBytes(StandardCharsets.UTF_8))
+                .toList();
+        transformedSources = parseAll(transformer, sources);
+        transformedSources.forEach(transformer::transform);
+    }
+
+    /**
+     * Provides freshly parsed sources for every invocation, because planning and rewriting mutate the AST.
+     */
+    @State(Scope.Thread)
+    public static class ParsedSources {
+        List<CompilationUnit> compilationUnits;
+
+        @Setup(Level.Invocation)
+        public void parse(TransformPhasesBenchmark benchmark) {
+            compilationUnits = parseAll(benchmark.transformer, benchmark.sources);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PlannedSources {
+        List<AdviceTransformationPlan> plans;
+
+        @Setup(Level.Invocation)
+        public void plan(TransformPhasesBenchmark benchmark) {
+            plans = new ArrayList<>();
+            for (CompilationUnit cu : parseAll(benchmark.transformer, benchmark.sources)) {
+                List<ClassOrInterfaceDeclaration> adviceClasses = new ArrayList<>();
+                // post-order, so that nested classes are transformed first like AdviceTransformer does
+                cu.walk(Node.TreeTraversal.POSTORDER, node -> {
+                    if (node instanceof ClassOrInterfaceDeclaration declaration) {
+                        AdviceTransformationPlan.create(declaration, AdviceTypeSolver.getShared()).ifPresent(plan -> {
+                            plans.add(plan);
+                            adviceClasses.add(declaration);
+                        });
+                    }
+                });
+                // like AdviceTransformer, so that rewriting includes the cost of maintaining the lexical preservation
+                SplicePrinter printer = SplicePrinter.of(cu).orElseThrow();
+                for (int i = adviceClasses.size() - 1; i >= 0; i--) {
+                    printer.track(adviceClasses.get(i));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        for (byte[] source : sources) {
+            blackhole.consume(transformer.load(new ByteArrayInputStream(source)));
+        }
+    }
+
+    @Benchmark
+    public void plan(ParsedSources parsed, Blackhole blackhole) {
+        for (CompilationUnit cu : parsed.compilationUnits) {
+            for (ClassOrInterfaceDeclaration declaration : cu.findAll(ClassOrInterfaceDeclaration.class)) {
+                blackhole.consume(AdviceTransformationPlan.create(declaration, AdviceTypeSolver.getShared()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void transform(PlannedSources planned, Blackhole blackhole) {
+        for (AdviceTransformationPlan plan : planned.plans) {
+            blackhole.consume(plan.transform());
+        }
+    }
+
+    @Benchmark
+    public void print(Blackhole blackhole) {
+        for (CompilationUnit cu : transformedSources) {
+            blackhole.consume(transformer.print(cu));
+        }
+    }
+
+    private static List<CompilationUnit> parseAll(AdviceTransformer transformer, List<byte[]> sources) {
+        return sources.stream()
+                .map(source -> transformer.load(new ByteArrayInputStream(source)))
+                .toList();
+    }
+}
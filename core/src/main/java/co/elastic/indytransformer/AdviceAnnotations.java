@@ -0,0 +1,32 @@
+package co.elastic.indytransformer;
+
+/**
+ * The fully qualified names of the bytebuddy advice types the transformer works with.
+ * <p>
+ * The names are spelled out instead of being derived from the bytebuddy classes, so that bytebuddy is not required at runtime.
+ * The declarations of these types are provided to the symbol solver by the embedded {@link #MODEL_RESOURCE},
+ * see {@link AdviceTypeSolver}.
+ */
+public final class AdviceAnnotations {
+
+    /**
+     * A generated source file declaring the public types nested in {@code net.bytebuddy.asm.Advice} which are annotations
+     * or contain annotations, without any members.
+     */
+    public static final String MODEL_RESOURCE = "bytebuddy-advice-model.java";
+
+    public static final String ADVICE = "net.bytebuddy.asm.Advice";
+    public static final String ON_METHOD_ENTER = ADVICE + ".OnMethodEnter";
+    public static final String ON_METHOD_EXIT = ADVICE + ".OnMethodExit";
+    public static final String RETURN = ADVICE + ".Return";
+    public static final String FIELD_VALUE = ADVICE + ".FieldValue";
+    public static final String ARGUMENT = ADVICE + ".Argument";
+    public static final String LOCAL = ADVICE + ".Local";
+    public static final String ENTER = ADVICE + ".Enter";
+    public static final String ASSIGN_RETURNED = ADVICE + ".AssignReturned";
+    public static final String ASSIGN_RETURNED_TO_ARGUMENT = ASSIGN_RETURNED + ".ToArguments.ToArgument";
+    public static final String ASSIGN_RETURNED_TO_FIELD = ASSIGN_RETURNED + ".ToFields.ToField";
+
+    private AdviceAnnotations() {
+    }
+}
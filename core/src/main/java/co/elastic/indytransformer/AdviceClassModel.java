@@ -0,0 +1,238 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.resolution.TypeSolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The advice methods of a class and their bytebuddy annotated parameters, built with a single pass over the methods of the class.
+ * <p>
+ * Every annotation of the methods and of the parameters of the advice methods is resolved exactly once, afterwards the
+ * parameters can be looked up by their annotation kind, {@code readOnly} flag and {@code Advice.Local} name without
+ * scanning the annotations again. The model is immutable and reflects the class as it was before the transformation:
+ * the parameters and annotations it refers to may be modified or removed by the transformation.
+ * <p>
+ * The parameters of classes which already use {@code Advice.AssignReturned} are not modelled, because such classes are
+ * not transformed and may use annotation values the transformation doesn't support, e.g. constants as {@code readOnly}.
+ */
+public final class AdviceClassModel {
+
+    public enum ParameterKind {
+        ARGUMENT(AdviceAnnotations.ARGUMENT, true),
+        FIELD_VALUE(AdviceAnnotations.FIELD_VALUE, true),
+        RETURN(AdviceAnnotations.RETURN, true),
+        LOCAL(AdviceAnnotations.LOCAL, false),
+        ENTER(AdviceAnnotations.ENTER, false);
+
+        private final String annotation;
+        private final boolean hasReadOnly;
+
+        ParameterKind(String annotation, boolean hasReadOnly) {
+            this.annotation = annotation;
+            this.hasReadOnly = hasReadOnly;
+        }
+    }
+
+    /**
+     * @param annotation the annotation of the given kind
+     * @param readOnly   false, if the annotation explicitly declares {@code readOnly = false}
+     * @param localName  the name of the {@code Advice.Local}, only set for {@link ParameterKind#LOCAL}
+     */
+    public record AdviceParameter(Parameter parameter, ParameterKind kind, AnnotationExpr annotation, boolean readOnly, String localName) {
+    }
+
+    public static final class AdviceMethod {
+        private final MethodDeclaration declaration;
+        private final boolean assignsReturned;
+        private final Map<ParameterKind, List<AdviceParameter>> parametersByKind = new EnumMap<>(ParameterKind.class);
+        private final Map<ParameterKind, List<AdviceParameter>> writtenParametersByKind = new EnumMap<>(ParameterKind.class);
+        private final Map<Parameter, List<AdviceParameter>> parametersByDeclaration = new IdentityHashMap<>();
+        private final Map<String, AdviceParameter> locals = new HashMap<>();
+
+        /**
+         * @param modelParameters false, if the parameters are not needed because the class is already migrated
+         */
+        private AdviceMethod(MethodDeclaration declaration, boolean assignsReturned, boolean modelParameters, TypeSolver typeSolver) {
+            this.declaration = declaration;
+            this.assignsReturned = assignsReturned;
+            for (ParameterKind kind : ParameterKind.values()) {
+                parametersByKind.put(kind, new ArrayList<>());
+                writtenParametersByKind.put(kind, new ArrayList<>());
+            }
+            List<Parameter> modelledParameters = modelParameters ? declaration.getParameters() : List.of();
+            for (Parameter parameter : modelledParameters) {
+                List<AdviceParameter> annotated = new ArrayList<>();
+                for (AnnotationExpr annotation : parameter.getAnnotations()) {
+                    Optional<ParameterKind> kind = AnnotationResolutionCache.resolveQualifiedName(annotation, typeSolver)
+                            .flatMap(AdviceClassModel::parameterKind);
+                    // like Utils.getAnnotation, only the first annotation of each kind is considered
+                    if (kind.isEmpty() || annotated.stream().anyMatch(existing -> existing.kind() == kind.get())) {
+                        continue;
+                    }
+                    annotated.add(createParameter(parameter, kind.get(), annotation));
+                }
+                for (AdviceParameter adviceParameter : annotated) {
+                    parametersByKind.get(adviceParameter.kind()).add(adviceParameter);
+                    if (!adviceParameter.readOnly()) {
+                        writtenParametersByKind.get(adviceParameter.kind()).add(adviceParameter);
+                    }
+                    if (adviceParameter.kind() == ParameterKind.LOCAL
+                        && locals.put(adviceParameter.localName(), adviceParameter) != null) {
+                        throw new IllegalStateException("Duplicate key " + adviceParameter.localName());
+                    }
+                }
+                if (!annotated.isEmpty()) {
+                    parametersByDeclaration.put(parameter, List.copyOf(annotated));
+                }
+            }
+            parametersByKind.replaceAll((kind, parameters) -> Collections.unmodifiableList(parameters));
+            writtenParametersByKind.replaceAll((kind, parameters) -> Collections.unmodifiableList(parameters));
+        }
+
+        private static AdviceParameter createParameter(Parameter parameter, ParameterKind kind, AnnotationExpr annotation) {
+            boolean readOnly = !kind.hasReadOnly || Utils.extractAnnotationArgumentValue(annotation, "readOnly")
+                    .map(Utils::resolveBooleanLiteral)
+                    .orElse(true);
+            String localName = null;
+            if (kind == ParameterKind.LOCAL) {
+                localName = Utils.extractStringLiteral(Utils.extractAnnotationArgumentValue(annotation, "value").get());
+            }
+            return new AdviceParameter(parameter, kind, annotation, readOnly, localName);
+        }
+
+        public MethodDeclaration declaration() {
+            return declaration;
+        }
+
+        /**
+         * @return true, if the method already uses {@code Advice.AssignReturned} annotations
+         */
+        public boolean assignsReturned() {
+            return assignsReturned;
+        }
+
+        /**
+         * @return the parameters annotated with the given kind, in declaration order
+         */
+        public List<AdviceParameter> parameters(ParameterKind kind) {
+            return parametersByKind.get(kind);
+        }
+
+        /**
+         * @return the parameters annotated with the given kind and {@code readOnly = false}, in declaration order
+         */
+        public List<AdviceParameter> writtenParameters(ParameterKind kind) {
+            return writtenParametersByKind.get(kind);
+        }
+
+        /**
+         * @return the {@code Advice.Local} parameters by their local name
+         */
+        public Map<String, AdviceParameter> locals() {
+            return Collections.unmodifiableMap(locals);
+        }
+
+        /**
+         * @return true, if the given parameter of this method was annotated with the given kind
+         */
+        public boolean hasKind(Parameter parameter, ParameterKind kind) {
+            return parametersByDeclaration.getOrDefault(parameter, List.of()).stream()
+                    .anyMatch(adviceParameter -> adviceParameter.kind() == kind);
+        }
+    }
+
+    private final AdviceMethod enterMethod;
+    private final AdviceMethod exitMethod;
+
+    private AdviceClassModel(AdviceMethod enterMethod, AdviceMethod exitMethod) {
+        this.enterMethod = enterMethod;
+        this.exitMethod = exitMethod;
+    }
+
+    /**
+     * @throws IllegalStateException if the class declares multiple enter or exit methods
+     */
+    public static AdviceClassModel of(ClassOrInterfaceDeclaration adviceClass, TypeSolver typeSolver) {
+        MethodDeclaration enter = null;
+        MethodDeclaration exit = null;
+        boolean enterAssignsReturned = false;
+        boolean exitAssignsReturned = false;
+        for (MethodDeclaration method : adviceClass.getMethods()) {
+            boolean isEnter = false;
+            boolean isExit = false;
+            boolean assignsReturned = false;
+            for (AnnotationExpr annotation : method.getAnnotations()) {
+                String qualifiedName = AnnotationResolutionCache.resolveQualifiedName(annotation, typeSolver).orElse(null);
+                if (qualifiedName == null) {
+                    continue;
+                }
+                isEnter |= qualifiedName.equals(AdviceAnnotations.ON_METHOD_ENTER);
+                isExit |= qualifiedName.equals(AdviceAnnotations.ON_METHOD_EXIT);
+                assignsReturned |= qualifiedName.startsWith(AdviceAnnotations.ASSIGN_RETURNED);
+            }
+            if (isEnter) {
+                enter = requireSingle(enter, method);
+                enterAssignsReturned = assignsReturned;
+            }
+            if (isExit) {
+                exit = requireSingle(exit, method);
+                exitAssignsReturned = assignsReturned;
+            }
+        }
+        boolean modelParameters = !enterAssignsReturned && !exitAssignsReturned;
+        return new AdviceClassModel(
+                enter != null ? new AdviceMethod(enter, enterAssignsReturned, modelParameters, typeSolver) : null,
+                exit != null ? new AdviceMethod(exit, exitAssignsReturned, modelParameters, typeSolver) : null);
+    }
+
+    private static MethodDeclaration requireSingle(MethodDeclaration existing, MethodDeclaration method) {
+        if (existing != null) {
+            throw new IllegalStateException("Expected at most one element: " + List.of(existing, method));
+        }
+        return method;
+    }
+
+    private static Optional<ParameterKind> parameterKind(String qualifiedName) {
+        for (ParameterKind kind : ParameterKind.values()) {
+            if (kind.annotation.equals(qualifiedName)) {
+                return Optional.of(kind);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Optional<AdviceMethod> enterMethod() {
+        return Optional.ofNullable(enterMethod);
+    }
+
+    public Optional<AdviceMethod> exitMethod() {
+        return Optional.ofNullable(exitMethod);
+    }
+
+    /**
+     * @return true, if the enter or exit method already uses {@code Advice.AssignReturned} annotations,
+     * in which case the parameters of the methods are not modelled
+     */
+    public boolean isAlreadyMigrated() {
+        return enterMethod().filter(AdviceMethod::assignsReturned).isPresent()
+               || exitMethod().filter(AdviceMethod::assignsReturned).isPresent();
+    }
+
+    /**
+     * @return true, if the class has an enter or an exit method
+     */
+    public boolean isAdvice() {
+        return enterMethod != null || exitMethod != null;
+    }
+}
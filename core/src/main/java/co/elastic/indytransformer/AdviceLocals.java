@@ -1,5 +1,8 @@
 package co.elastic.indytransformer;
 
+import co.elastic.indytransformer.AdviceClassModel.AdviceMethod;
+import co.elastic.indytransformer.AdviceClassModel.AdviceParameter;
+import co.elastic.indytransformer.AdviceClassModel.ParameterKind;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
@@ -8,7 +11,6 @@ import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.VariableDeclarator;
-import com.github.javaparser.ast.expr.AnnotationExpr;
 import com.github.javaparser.ast.expr.ArrayAccessExpr;
 import com.github.javaparser.ast.expr.AssignExpr;
 import com.github.javaparser.ast.expr.BooleanLiteralExpr;
@@ -28,30 +30,21 @@ import com.github.javaparser.ast.stmt.ReturnStmt;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.type.PrimitiveType;
 import com.github.javaparser.ast.type.Type;
-import com.github.javaparser.ast.visitor.ModifierVisitor;
 import com.github.javaparser.printer.lexicalpreservation.GeneratedClassCleaner;
 import com.github.javaparser.resolution.TypeSolver;
-import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
-import com.github.javaparser.resolution.model.SymbolReference;
-import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
-import com.github.javaparser.symbolsolver.javaparsermodel.declarations.JavaParserParameterDeclaration;
 import com.google.common.collect.Streams;
-import net.bytebuddy.asm.Advice;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class AdviceLocals {
 
     private static final String CONTAINER_CLASS_NAME = "AdviceLocals";
 
-    private static final String ADVICE_LOCAL = Advice.Local.class.getCanonicalName();
-    private static final String ADVICE_ENTER = Advice.Enter.class.getCanonicalName();
     public static final String LOCALS_CONTAINER_VAR_NAME = "locals";
 
     private final Map<String, Parameter> enterLocals;
@@ -63,16 +56,13 @@ public class AdviceLocals {
     private final Parameter exitEnterParameter;
     private final TypeSolver typeSolver;
 
-    public static Optional<AdviceLocals> create(MethodDeclaration enterMethod, MethodDeclaration exitMethod, TypeSolver typeSolver) {
-        Map<String, Parameter> enterLocals = collectAdviceLocalParameters(enterMethod, typeSolver);
-        Map<String, Parameter> exitLocals = collectAdviceLocalParameters(exitMethod, typeSolver);
-        Parameter exitEnterParameter = null;
-        if (exitMethod != null) {
-            exitEnterParameter = exitMethod.getParameters().stream()
-                    .filter(param -> Utils.getAnnotation(param, ADVICE_ENTER, typeSolver).isPresent())
-                    .collect(Utils.atMostOne())
-                    .orElse(null);
-        }
+    public static Optional<AdviceLocals> create(AdviceClassModel model, TypeSolver typeSolver) {
+        Map<String, Parameter> enterLocals = collectAdviceLocalParameters(model.enterMethod());
+        Map<String, Parameter> exitLocals = collectAdviceLocalParameters(model.exitMethod());
+        Parameter exitEnterParameter = model.exitMethod()
+                .flatMap(exitMethod -> exitMethod.parameters(ParameterKind.ENTER).stream().collect(Utils.atMostOne()))
+                .map(AdviceParameter::parameter)
+                .orElse(null);
 
         if (enterLocals.isEmpty() && exitLocals.isEmpty() && exitEnterParameter == null) {
             return Optional.empty();
@@ -94,19 +84,15 @@ public class AdviceLocals {
         return !enterLocals.isEmpty();
     }
 
-    private static Map<String, Parameter> collectAdviceLocalParameters(MethodDeclaration method, TypeSolver typeSolver) {
-        if (method == null) {
+    private static Map<String, Parameter> collectAdviceLocalParameters(Optional<AdviceMethod> method) {
+        if (method.isEmpty()) {
             return Collections.emptyMap();
         }
-        return method.getParameters().stream()
-                .filter(param -> Utils.getAnnotation(param, ADVICE_LOCAL, typeSolver).isPresent())
-                .collect(Collectors.toMap(
-                        param -> {
-                            AnnotationExpr adviceLocalAnno = Utils.getAnnotation(param, ADVICE_LOCAL, typeSolver).get();
-                            return Utils.extractStringLiteral(Utils.extractAnnotationArgumentValue(adviceLocalAnno, "value").get());
-                        },
-                        param -> param
-                ));
+        Map<String, Parameter> locals = new HashMap<>();
+        for (AdviceParameter local : method.get().parameters(ParameterKind.LOCAL)) {
+            locals.put(local.localName(), local.parameter());
+        }
+        return locals;
     }
 
     public boolean requiresContainerClass() {
@@ -197,22 +183,14 @@ public class AdviceLocals {
             localDeclarator = new VariableDeclarator(varType, localVarName, getDefaultValue(varType));
         }
         enterMethod.getBody().get().addAndGetStatement(0, new ExpressionStmt(new VariableDeclarationExpr(localDeclarator)));
-        return new ValueToReturn<>(localDeclarator, null);
+        return new ValueToReturn<>(localDeclarator, ValueToReturn.Rewrite.LOCALS, null);
     }
 
     private void replaceReturnExpressionsWithAssignments(MethodDeclaration method, Expression assignmentLHS) {
-        List<ReturnStmt> allReturns = new ArrayList<>();
-        new ScopedReturnVisitor<Void>() {
-            @Override
-            public void visit(ReturnStmt returnStmt, Void arg) {
-                allReturns.add(returnStmt);
-            }
-        }.visit(method.getBody().get(), null);
-
-        for (ReturnStmt returnStmt : allReturns) {
+        for (ReturnStmt returnStmt : MethodIndex.of(method, typeSolver).getReturns()) {
             //At the moment we only support returns which are in a block statement
             BlockStmt parentBlock = (BlockStmt) returnStmt.getParentNode().get();
-            int insertionIndex = parentBlock.getStatements().indexOf(returnStmt);
+            int insertionIndex = Utils.indexOfIdentity(parentBlock.getStatements(), returnStmt);
             Expression value = returnStmt.getExpression().get();
             returnStmt.setExpression(null);
 
@@ -288,22 +266,6 @@ public class AdviceLocals {
 
     private void replaceParameterReferences(Parameter param, Expression replacement) {
         MethodDeclaration declaringMethod = (MethodDeclaration) param.getParentNode().get();
-        new ModifierVisitor<Void>() {
-            @Override
-            public Expression visit(NameExpr name, Void arg) {
-                if (name.getNameAsString().equals(param.getNameAsString())) {
-                    SymbolReference<? extends ResolvedValueDeclaration> result =
-                            JavaParserFacade.get(typeSolver).solve((name));
-                    if (result.isSolved()) {
-                        ResolvedValueDeclaration correspondingDeclaration = result.getCorrespondingDeclaration();
-                        if (correspondingDeclaration instanceof JavaParserParameterDeclaration paramDecl
-                            && paramDecl.getWrappedNode() == param) {
-                            return replacement.clone();
-                        }
-                    }
-                }
-                return name;
-            }
-        }.visit(declaringMethod, null);
+        MethodIndex.of(declaringMethod, typeSolver).replaceReferences(param, replacement);
     }
 }
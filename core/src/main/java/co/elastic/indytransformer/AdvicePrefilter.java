@@ -0,0 +1,90 @@
+package co.elastic.indytransformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cheap textual check whether a source file can contain bytebuddy advice at all.
+ * This allows to skip files without parsing them, which is by far the most expensive part of the transformation.
+ * <p>
+ * An advice method needs to be annotated with {@code OnMethodEnter} or {@code OnMethodExit}, which can only be resolved
+ * to the bytebuddy annotations if {@code net.bytebuddy} is mentioned in the file as well (either via an import,
+ * a fully qualified name or the package declaration). If any of these tokens is missing, the file is skipped.
+ */
+public class AdvicePrefilter {
+
+    /**
+     * Files of at least this size are memory mapped instead of being copied to the heap.
+     */
+    private static final int MEMORY_MAP_THRESHOLD = 64 * 1024;
+
+    private static final byte[] BYTEBUDDY_PACKAGE = ascii("net.bytebuddy");
+    private static final byte[] ON_METHOD_ENTER = ascii("OnMethodEnter");
+    private static final byte[] ON_METHOD_EXIT = ascii("OnMethodExit");
+
+    public static boolean mayContainAdvice(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer content;
+            if (size >= MEMORY_MAP_THRESHOLD) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.allocate((int) size);
+                while (content.hasRemaining()) {
+                    if (channel.read(content) == -1) {
+                        break;
+                    }
+                }
+                content.flip();
+            }
+            return mayContainAdvice(content);
+        }
+    }
+
+    public static boolean mayContainAdvice(ByteBuffer content) {
+        if (isUtf16(content)) {
+            // the tokens are not ASCII encoded, we can't rule out that this file contains advice
+            return true;
+        }
+        return contains(content, BYTEBUDDY_PACKAGE)
+               && (contains(content, ON_METHOD_ENTER) || contains(content, ON_METHOD_EXIT));
+    }
+
+    private static boolean isUtf16(ByteBuffer content) {
+        if (content.remaining() < 2) {
+            return false;
+        }
+        int first = content.get(content.position()) & 0xFF;
+        int second = content.get(content.position() + 1) & 0xFF;
+        return (first == 0xFE && second == 0xFF) || (first == 0xFF && second == 0xFE);
+    }
+
+    static boolean contains(ByteBuffer content, byte[] token) {
+        int start = content.position();
+        int last = content.limit() - token.length;
+        byte firstByte = token[0];
+        for (int i = start; i <= last; i++) {
+            if (content.get(i) == firstByte && matchesAt(content, i, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAt(ByteBuffer content, int offset, byte[] token) {
+        for (int j = 1; j < token.length; j++) {
+            if (content.get(offset + j) != token[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String token) {
+        return token.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,5 +1,8 @@
 package co.elastic.indytransformer;
 
+import co.elastic.indytransformer.AdviceClassModel.AdviceMethod;
+import co.elastic.indytransformer.AdviceClassModel.AdviceParameter;
+import co.elastic.indytransformer.AdviceClassModel.ParameterKind;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.ArrayCreationLevel;
 import com.github.javaparser.ast.Node;
@@ -31,17 +34,8 @@ import com.github.javaparser.ast.stmt.ReturnStmt;
 import com.github.javaparser.ast.stmt.Statement;
 import com.github.javaparser.ast.type.ArrayType;
 import com.github.javaparser.ast.type.Type;
-import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 import com.github.javaparser.resolution.TypeSolver;
-import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
-import com.github.javaparser.resolution.model.SymbolReference;
-import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
-import com.github.javaparser.symbolsolver.javaparsermodel.declarations.JavaParserParameterDeclaration;
-import com.github.javaparser.symbolsolver.javaparsermodel.declarations.JavaParserVariableDeclaration;
-import com.google.common.collect.Streams;
-import net.bytebuddy.asm.Advice;
-
-import javax.annotation.Nullable;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -49,59 +43,45 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class AdviceTransformationPlan {
 
-    private static final String ADVICE_ON_METHOD_ENTER = Advice.OnMethodEnter.class.getCanonicalName();
-    private static final String ADVICE_ON_METHOD_EXIT = Advice.OnMethodExit.class.getCanonicalName();
-    private static final String ADVICE_RETURN = Advice.Return.class.getCanonicalName();
-    private static final String ADVICE_FIELDVALUE = Advice.FieldValue.class.getCanonicalName();
-    private static final String ADVICE_ARGUMENT = Advice.Argument.class.getCanonicalName();
-    public static final String ASSIGNRETURNED_CLASS = Advice.AssignReturned.class.getCanonicalName();
+    public static final String ASSIGNRETURNED_CLASS = AdviceAnnotations.ASSIGN_RETURNED;
 
     private final TypeSolver typeSolver;
-    private final ClassOrInterfaceDeclaration adviceClass;
+    private final AdviceClassModel model;
     private final MethodDeclaration enterMethod;
     private final MethodDeclaration exitMethod;
 
-    private final List<Parameter> enterWrittenArguments;
-    private final List<Parameter> enterWrittenFieldValues;
+    private final List<AdviceParameter> enterWrittenArguments;
+    private final List<AdviceParameter> enterWrittenFieldValues;
 
-    private final Parameter assignedReturnParam;
-    private final List<Parameter> exitWrittenFieldValues;
+    private final AdviceParameter assignedReturnParam;
+    private final List<AdviceParameter> exitWrittenFieldValues;
 
     private final AdviceLocals locals;
 
-    private AdviceTransformationPlan(ClassOrInterfaceDeclaration adviceClass, TypeSolver typeSolver) {
+    private AdviceTransformationPlan(AdviceClassModel model, TypeSolver typeSolver) {
         this.typeSolver = typeSolver;
-        this.adviceClass = adviceClass;
-        enterMethod = Utils.findAnnotatedMethod(adviceClass, ADVICE_ON_METHOD_ENTER, typeSolver).orElse(null);
-        exitMethod = Utils.findAnnotatedMethod(adviceClass, ADVICE_ON_METHOD_EXIT, typeSolver).orElse(null);
-
-        locals = AdviceLocals.create(enterMethod, exitMethod, typeSolver).orElse(null);
-
-        if (enterMethod != null) {
-            enterWrittenArguments = findNonReadOnlyParameters(enterMethod, ADVICE_ARGUMENT, typeSolver)
-                    .toList();
-            enterWrittenFieldValues = findNonReadOnlyParameters(enterMethod, ADVICE_FIELDVALUE, typeSolver)
-                    .toList();
-        } else {
-            enterWrittenArguments = Collections.emptyList();
-            enterWrittenFieldValues = Collections.emptyList();
-        }
-
-        if (exitMethod != null) {
-            assignedReturnParam = findNonReadOnlyParameters(exitMethod, ADVICE_RETURN, typeSolver)
-                    .collect(Utils.atMostOne())
-                    .orElse(null);
-
-            exitWrittenFieldValues = findNonReadOnlyParameters(exitMethod, ADVICE_FIELDVALUE, typeSolver)
-                    .toList();
-        } else {
-            assignedReturnParam = null;
-            exitWrittenFieldValues = Collections.emptyList();
-        }
+        this.model = model;
+        enterMethod = model.enterMethod().map(AdviceMethod::declaration).orElse(null);
+        exitMethod = model.exitMethod().map(AdviceMethod::declaration).orElse(null);
+
+        locals = AdviceLocals.create(model, typeSolver).orElse(null);
+
+        enterWrittenArguments = model.enterMethod()
+                .map(method -> method.writtenParameters(ParameterKind.ARGUMENT))
+                .orElse(Collections.emptyList());
+        enterWrittenFieldValues = model.enterMethod()
+                .map(method -> method.writtenParameters(ParameterKind.FIELD_VALUE))
+                .orElse(Collections.emptyList());
+
+        assignedReturnParam = model.exitMethod()
+                .flatMap(method -> method.writtenParameters(ParameterKind.RETURN).stream().collect(Utils.atMostOne()))
+                .orElse(null);
+        exitWrittenFieldValues = model.exitMethod()
+                .map(method -> method.writtenParameters(ParameterKind.FIELD_VALUE))
+                .orElse(Collections.emptyList());
     }
 
     public static Optional<AdviceTransformationPlan> create(ClassOrInterfaceDeclaration maybeAdviceClass, TypeSolver typeSolver) {
@@ -110,20 +90,16 @@ public class AdviceTransformationPlan {
             return Optional.empty();
         }
 
-        Optional<MethodDeclaration> enterMethod = Utils.findAnnotatedMethod(maybeAdviceClass, ADVICE_ON_METHOD_ENTER, typeSolver);
-        Optional<MethodDeclaration> exitMethod = Utils.findAnnotatedMethod(maybeAdviceClass, ADVICE_ON_METHOD_EXIT, typeSolver);
-        if (!enterMethod.isPresent() && !exitMethod.isPresent()) {
+        AdviceClassModel model = AdviceClassModel.of(maybeAdviceClass, typeSolver);
+        if (!model.isAdvice()) {
             return Optional.empty();
         }
 
-        boolean isAlreadyMigrated = Streams.concat(enterMethod.stream(), exitMethod.stream())
-                .anyMatch(method -> Utils.getAnnotation(method, anno -> anno.startsWith(ASSIGNRETURNED_CLASS), typeSolver).isPresent());
-
-        if (isAlreadyMigrated) {
+        if (model.isAlreadyMigrated()) {
             return Optional.empty();
         }
 
-        return Optional.of(new AdviceTransformationPlan(maybeAdviceClass, typeSolver));
+        return Optional.of(new AdviceTransformationPlan(model, typeSolver));
     }
 
 
@@ -138,27 +114,29 @@ public class AdviceTransformationPlan {
             return false;
         }
 
-        if (locals != null && locals.requiresContainerClass()) {
-            ClassOrInterfaceDeclaration adviceClass = (ClassOrInterfaceDeclaration) enterMethod.getParentNode().get();
-            NodeList<BodyDeclaration<?>> members = adviceClass.getMembers();
-            int insertionIndex = members.indexOf(enterMethod);
-            members.add(insertionIndex, locals.getContainerClass());
-        }
-
         List<ValueToReturn<?>> enterReturnValues = new ArrayList<>();
         if (locals != null) {
-            enterReturnValues.add(locals.transformEnterMethod(enterMethod));
+            TransformerEvents.run(TransformerEvents.RewriteLocalsEvent::new, enterMethod, () -> {
+                if (locals.requiresContainerClass()) {
+                    ClassOrInterfaceDeclaration adviceClass = (ClassOrInterfaceDeclaration) enterMethod.getParentNode().get();
+                    NodeList<BodyDeclaration<?>> members = adviceClass.getMembers();
+                    int insertionIndex = Utils.indexOfIdentity(members, enterMethod);
+                    members.add(insertionIndex, locals.getContainerClass());
+                }
+                enterReturnValues.add(locals.transformEnterMethod(enterMethod));
+            });
         }
         enterReturnValues.addAll(transformFieldAssignments(enterWrittenFieldValues));
         enterReturnValues.addAll(transformArgumentAssignments(enterWrittenArguments));
 
         replaceReturnValueAndAddAnnotations(enterMethod, enterReturnValues);
-        enterReturnValues.forEach(val -> removeParameterOrVariableIfNeverUsed(enterMethod, val.parameterOrVariable()));
+        removeIfNeverUsed(enterMethod, enterReturnValues);
 
         Parameter adviceEnterParameter = null;
         VariableDeclarator localsUnpackingDeclaration = null;
         if (locals != null) {
-            AdviceLocals.ExitTransformResult exitTransformResult = locals.transformExitMethod(exitMethod, enterReturnValues.size() > 1);
+            AdviceLocals.ExitTransformResult exitTransformResult = TransformerEvents.run(TransformerEvents.RewriteLocalsEvent::new, exitMethod,
+                    () -> locals.transformExitMethod(exitMethod, enterReturnValues.size() > 1));
             adviceEnterParameter = exitTransformResult.adviceEnterParameter();
             localsUnpackingDeclaration = exitTransformResult.localsUnpackingDeclaration();
         }
@@ -172,16 +150,25 @@ public class AdviceTransformationPlan {
         exitReturnValues.addAll(transformFieldAssignments(exitWrittenFieldValues));
 
         replaceReturnValueAndAddAnnotations(exitMethod, exitReturnValues);
-        if (localsUnpackingDeclaration != null) {
-            removeParameterOrVariableIfNeverUsed(exitMethod, localsUnpackingDeclaration);
-        }
-        if (adviceEnterParameter != null) {
-            removeParameterOrVariableIfNeverUsed(exitMethod, adviceEnterParameter);
+        if (localsUnpackingDeclaration != null || adviceEnterParameter != null) {
+            Node unpackingDeclaration = localsUnpackingDeclaration;
+            Node enterParameter = adviceEnterParameter;
+            TransformerEvents.run(TransformerEvents.RewriteLocalsEvent::new, exitMethod, () -> {
+                if (unpackingDeclaration != null) {
+                    removeParameterOrVariableIfNeverUsed(exitMethod, unpackingDeclaration);
+                }
+                if (enterParameter != null) {
+                    removeParameterOrVariableIfNeverUsed(exitMethod, enterParameter);
+                }
+            });
         }
-        exitReturnValues.forEach(val -> removeParameterOrVariableIfNeverUsed(exitMethod, val.parameterOrVariable()));
+        removeIfNeverUsed(exitMethod, exitReturnValues);
 
-        ensureParametersAreReadOnly(enterMethod);
-        ensureParametersAreReadOnly(exitMethod);
+        MethodIndex.discard(enterMethod);
+        MethodIndex.discard(exitMethod);
+
+        ensureParametersAreReadOnly(model.enterMethod());
+        ensureParametersAreReadOnly(model.exitMethod());
 
         return true;
     }
@@ -190,17 +177,18 @@ public class AdviceTransformationPlan {
      * Ensures that @Advice.Argument, @Advice.FieldValue and @Advice.ReturnValue parameters are never written.
      * This is only required if the advice is inlined, because in that case bytebuddy does not allow writing to the parameters.
      */
-    private void ensureParametersAreReadOnly(@Nullable MethodDeclaration method) {
-        if (method == null) {
+    private void ensureParametersAreReadOnly(Optional<AdviceMethod> adviceMethod) {
+        if (adviceMethod.isEmpty()) {
             return;
         }
+        MethodDeclaration method = adviceMethod.get().declaration();
         List<Parameter> parameters = new ArrayList<>(method.getParameters());
         // Iterate in reverse order to keep the local var declarations in the same order as the parameters
         Collections.reverse(parameters);
         for (Parameter parameter : parameters) {
-            if ( Utils.hasAnnotation(parameter, ADVICE_ARGUMENT, typeSolver) ||
-                 Utils.hasAnnotation(parameter, ADVICE_FIELDVALUE, typeSolver) ||
-                 Utils.hasAnnotation(parameter, ADVICE_RETURN, typeSolver)
+            if ( adviceMethod.get().hasKind(parameter, ParameterKind.ARGUMENT) ||
+                 adviceMethod.get().hasKind(parameter, ParameterKind.FIELD_VALUE) ||
+                 adviceMethod.get().hasKind(parameter, ParameterKind.RETURN)
                  ) {
                 // Look for all assignment expressions with the name on the LHS
                 AtomicBoolean isWrittenTo = new AtomicBoolean(false);
@@ -224,24 +212,24 @@ public class AdviceTransformationPlan {
         }
     }
 
-    private static Stream<Parameter> findNonReadOnlyParameters(MethodDeclaration method, String annotationFqn, TypeSolver typeSolver) {
-        return method.getParameters().stream()
-                .filter(param -> Utils.getAnnotation(param, annotationFqn, typeSolver)
-                        .stream()
-                        .flatMap(anno -> Utils.extractAnnotationArgumentValue(anno, "readOnly").stream())
-                        .anyMatch(readonlyValue -> Utils.resolveBooleanLiteral(readonlyValue) == false)
-                );
+    private List<ValueToReturn<?>> transformArgumentAssignments(List<AdviceParameter> enterWrittenArguments) {
+        if (enterWrittenArguments.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return TransformerEvents.run(TransformerEvents.RewriteArgumentsEvent::new, enterWrittenArguments.get(0).parameter(),
+                () -> createArgumentReturnValues(enterWrittenArguments));
     }
 
-    private List<ValueToReturn<?>> transformArgumentAssignments(List<Parameter> enterWrittenArguments) {
+    private List<ValueToReturn<?>> createArgumentReturnValues(List<AdviceParameter> enterWrittenArguments) {
         List<ValueToReturn<?>> returns = new ArrayList<>();
-        for (Parameter writtenArg : enterWrittenArguments) {
-            AnnotationExpr anno = Utils.getAnnotation(writtenArg, ADVICE_ARGUMENT, typeSolver).get();
+        for (AdviceParameter writtenArgument : enterWrittenArguments) {
+            Parameter writtenArg = writtenArgument.parameter();
+            AnnotationExpr anno = writtenArgument.annotation();
             int argIndex = Utils.extractIntLiteral(Utils.extractAnnotationArgumentValue(anno, "value").get());
             anno.replace(Utils.removeAnnotationArgumentValue(anno, "readOnly"));
 
-            returns.add(new ValueToReturn<>(writtenArg, (method, index) -> {
-                Utils.addImports(method, Advice.AssignReturned.class, Advice.AssignReturned.ToArguments.ToArgument.class);
+            returns.add(new ValueToReturn<>(writtenArg, ValueToReturn.Rewrite.ARGUMENTS, (method, index) -> {
+                Utils.addImports(method, AdviceAnnotations.ASSIGN_RETURNED, AdviceAnnotations.ASSIGN_RETURNED_TO_ARGUMENT);
                 SingleMemberAnnotationExpr toArguments = findOrCreateRepeatableWrapperAnnotation(method, "AssignReturned.ToArguments");
 
                 AnnotationExpr result;
@@ -262,12 +250,14 @@ public class AdviceTransformationPlan {
         return returns;
     }
 
-    private ValueToReturn<?> transformReturnValueAssignment(Parameter returnValueParameter) {
-        AnnotationExpr assignReturnedExpr = Utils.getAnnotation(returnValueParameter, ADVICE_RETURN, typeSolver).get();
-        assignReturnedExpr.replace(Utils.removeAnnotationArgumentValue(assignReturnedExpr, "readOnly"));
+    private ValueToReturn<?> transformReturnValueAssignment(AdviceParameter returnValue) {
+        Parameter returnValueParameter = returnValue.parameter();
+        AnnotationExpr assignReturnedExpr = returnValue.annotation();
+        TransformerEvents.run(TransformerEvents.RewriteReturnEvent::new, returnValueParameter,
+                () -> assignReturnedExpr.replace(Utils.removeAnnotationArgumentValue(assignReturnedExpr, "readOnly")));
 
-        return new ValueToReturn<>(returnValueParameter, (method, index) -> {
-            Utils.addImports(method, Advice.AssignReturned.class);
+        return new ValueToReturn<>(returnValueParameter, ValueToReturn.Rewrite.RETURN, (method, index) -> {
+            Utils.addImports(method, AdviceAnnotations.ASSIGN_RETURNED);
             Name annoName = new Name("AssignReturned.ToReturned");
             AnnotationExpr result;
             if (index == -1) {
@@ -309,16 +299,25 @@ public class AdviceTransformationPlan {
     }
 
 
-    private List<ValueToReturn<Parameter>> transformFieldAssignments(List<Parameter> fieldAssignmentParameters) {
+    private List<ValueToReturn<Parameter>> transformFieldAssignments(List<AdviceParameter> fieldAssignmentParameters) {
+        if (fieldAssignmentParameters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return TransformerEvents.run(TransformerEvents.RewriteFieldsEvent::new, fieldAssignmentParameters.get(0).parameter(),
+                () -> createFieldReturnValues(fieldAssignmentParameters));
+    }
+
+    private List<ValueToReturn<Parameter>> createFieldReturnValues(List<AdviceParameter> fieldAssignmentParameters) {
         return fieldAssignmentParameters.stream()
-                .map(writtenField -> {
-                    AnnotationExpr anno = Utils.getAnnotation(writtenField, ADVICE_FIELDVALUE, typeSolver).get();
+                .map(writtenFieldValue -> {
+                    Parameter writtenField = writtenFieldValue.parameter();
+                    AnnotationExpr anno = writtenFieldValue.annotation();
                     Expression fieldNameExpression = Utils.extractAnnotationArgumentValue(anno, "value").get();
                     anno.replace(Utils.removeAnnotationArgumentValue(anno, "readOnly"));
 
 
-                    return new ValueToReturn<>(writtenField, (method, index) -> {
-                        Utils.addImports(method, Advice.AssignReturned.class, Advice.AssignReturned.ToFields.ToField.class);
+                    return new ValueToReturn<>(writtenField, ValueToReturn.Rewrite.FIELDS, (method, index) -> {
+                        Utils.addImports(method, AdviceAnnotations.ASSIGN_RETURNED, AdviceAnnotations.ASSIGN_RETURNED_TO_FIELD);
 
                         SingleMemberAnnotationExpr toFields = findOrCreateRepeatableWrapperAnnotation(method, "AssignReturned.ToFields");
 
@@ -357,35 +356,17 @@ public class AdviceTransformationPlan {
     }
 
 
-    private void removeParameterOrVariableIfNeverUsed(MethodDeclaration method, Node paramOrVarDeclaration) {
-        AtomicBoolean isUsed = new AtomicBoolean(false);
-        String paramOrVarName;
-        if (paramOrVarDeclaration instanceof Parameter param) {
-            paramOrVarName = param.getNameAsString();
-        } else {
-            paramOrVarName = ((VariableDeclarator) paramOrVarDeclaration).getNameAsString();
+    /**
+     * Removes the returned parameters and variables which are no longer used, reported as part of the rewrite they belong to.
+     */
+    private void removeIfNeverUsed(MethodDeclaration method, List<ValueToReturn<?>> returnValues) {
+        for (ValueToReturn<?> value : returnValues) {
+            TransformerEvents.run(value.rewrite(), method, () -> removeParameterOrVariableIfNeverUsed(method, value.parameterOrVariable()));
         }
-        new VoidVisitorAdapter<Void>() {
-            @Override
-            public void visit(NameExpr name, Void arg) {
-                super.visit(name, arg);
-                if (name.getNameAsString().equals(paramOrVarName) && !Utils.isLHSOfAssignment(name)) {
-                    SymbolReference<? extends ResolvedValueDeclaration> result =
-                            JavaParserFacade.get(typeSolver).solve((name));
-                    if (result.isSolved()) {
-                        ResolvedValueDeclaration correspondingDeclaration = result.getCorrespondingDeclaration();
-                        if (correspondingDeclaration instanceof JavaParserParameterDeclaration paramDecl
-                            && paramDecl.getWrappedNode() == paramOrVarDeclaration) {
-                            isUsed.set(true);
-                        } else if (correspondingDeclaration instanceof JavaParserVariableDeclaration varDecl
-                                   && varDecl.getWrappedNode().getVariable(0) == paramOrVarDeclaration) {
-                            isUsed.set(true);
-                        }
-                    }
-                }
-            }
-        }.visit(method, null);
-        if (!isUsed.get()) {
+    }
+
+    private void removeParameterOrVariableIfNeverUsed(MethodDeclaration method, Node paramOrVarDeclaration) {
+        if (!MethodIndex.of(method, typeSolver).isUsed(paramOrVarDeclaration)) {
             if (paramOrVarDeclaration instanceof VariableDeclarator) {
                 VariableDeclarationExpr containingExpression = (VariableDeclarationExpr) paramOrVarDeclaration.getParentNode().get();
                 ExpressionStmt containingStatement = (ExpressionStmt) containingExpression.getParentNode().get();
@@ -404,9 +385,13 @@ public class AdviceTransformationPlan {
             ValueToReturn<?> val = exitReturnValues.get(i);
             int index = exitReturnValues.size() == 1 ? -1 : i;
             if (val.annoGenerator() != null) {
-                val.annoGenerator().addAnnotation(method, index);
+                TransformerEvents.run(val.rewrite(), method, () -> val.annoGenerator().addAnnotation(method, index));
             }
         }
+        TransformerEvents.run(TransformerEvents.RewriteReturnStatementsEvent::new, method, () -> rewriteReturnStatements(method, exitReturnValues));
+    }
+
+    private void rewriteReturnStatements(MethodDeclaration method, List<ValueToReturn<?>> exitReturnValues) {
 
         Expression returnExpression;
         Type returnType;
@@ -432,18 +417,12 @@ public class AdviceTransformationPlan {
         if (lastStatement.isEmpty() || !(lastStatement.get() instanceof ReturnStmt)) {
             methodBody.addAndGetStatement(new ReturnStmt());
         }
-        replaceReturnValues(methodBody, returnExpression);
+        replaceReturnValues(method, returnExpression);
     }
 
-    private void replaceReturnValues(BlockStmt methodBody, Expression returnExpression) {
-        List<ReturnStmt> modifiedReturns = new ArrayList<>();
-        new ScopedReturnVisitor<Void>() {
-            @Override
-            public void visit(ReturnStmt returnStmt, Void arg) {
-                returnStmt.setExpression(returnExpression.clone());
-                modifiedReturns.add(returnStmt);
-            }
-        }.visit(methodBody, null);
+    private void replaceReturnValues(MethodDeclaration method, Expression returnExpression) {
+        List<ReturnStmt> modifiedReturns = MethodIndex.of(method, typeSolver).getReturns();
+        modifiedReturns.forEach(returnStmt -> returnStmt.setExpression(returnExpression.clone()));
         modifiedReturns.forEach(AdviceTransformationPlan::simplifyReturnStatement);
     }
 
@@ -455,11 +434,12 @@ public class AdviceTransformationPlan {
             List<Comment> additionalOrphanComments = new ArrayList<>();
             List<NameExpr> returnedVariables = new ArrayList<>();
             returnStmt.getExpression().get().walk(NameExpr.class, returnedVariables::add);
+            NodeList<Statement> statements = containingBlock.getStatements();
+            int returnIndex = Utils.indexOfIdentity(statements, returnStmt);
             boolean continueOptimizing;
             do {
                 continueOptimizing = false;
-                NodeList<Statement> statements = containingBlock.getStatements();
-                int prevStatementIndex = statements.indexOf(returnStmt) - 1;
+                int prevStatementIndex = returnIndex - 1;
                 if (prevStatementIndex >= 0) {
                     Statement prevStatement = statements.get(prevStatementIndex);
                     if (prevStatement instanceof ExpressionStmt expressionStmt
@@ -491,6 +471,7 @@ public class AdviceTransformationPlan {
                                     additionalOrphanComments.add(0, comment);
                                 }
                                 prevStatement.remove();
+                                returnIndex--;
                                 replacedReturnExpression.replace(assignExpr.getValue());
                                 returnedVariables.remove(replacedReturnExpression);
                                 continueOptimizing = true;
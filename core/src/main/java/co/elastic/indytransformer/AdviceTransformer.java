@@ -0,0 +1,208 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.JavaParserAdapter;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node.TreeTraversal;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.printer.lexicalpreservation.LexicalPreservingPrinter;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class AdviceTransformer {
+
+    private final TypeSolver typeSolver;
+    private final JavaParser parser;
+    private final TransformerStats stats;
+    private final SourceFile.Buffer readBuffer = new SourceFile.Buffer();
+
+    public AdviceTransformer() {
+        this(AdviceTypeSolver.getShared());
+    }
+
+    /**
+     * @param typeSolver the type solver to use, which may be shared with other transformers if it is thread safe
+     */
+    public AdviceTransformer(TypeSolver typeSolver) {
+        this(typeSolver, TransformerStats.DISABLED);
+    }
+
+    /**
+     * @param stats the statistics to record the phase timings in, may be shared with other transformers
+     */
+    public AdviceTransformer(TypeSolver typeSolver, TransformerStats stats) {
+        this.typeSolver = typeSolver;
+        this.stats = stats;
+        parser = new JavaParser(new ParserConfiguration()
+                .setSymbolResolver(new JavaSymbolSolver(typeSolver)));
+    }
+
+    /**
+     * Transforms the given file in place. The file is only written if its content changed.
+     *
+     * @return true, if the file was changed
+     */
+    public boolean transform(Path file) {
+        try {
+            long start = stats.start();
+            SourceFile source = SourceFile.read(file, readBuffer);
+            stats.stop(TransformerStats.Phase.READ, start);
+            return transformInPlace(source, file);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read file", e);
+        }
+    }
+
+    /**
+     * Transforms the given file in place, using its content which has already been read, e.g. to prefilter it.
+     *
+     * @return true, if the file was changed
+     */
+    public boolean transformInPlace(SourceFile source, Path file) {
+        try {
+            Optional<byte[]> output = transform(source, file).flatMap(source::encodeIfChanged);
+            if (output.isPresent()) {
+                long start = stats.start();
+                TransformerEvents.WriteEvent event = TransformerEvents.begin(TransformerEvents.WriteEvent::new, file);
+                try (SourceWriter writer = new SourceWriter()) {
+                    writer.write(file, output.get());
+                } finally {
+                    TransformerEvents.end(event);
+                }
+                stats.stop(TransformerStats.Phase.WRITE, start);
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to write file", e);
+        }
+    }
+
+    /**
+     * Transforms the given source file content.
+     *
+     * @return the transformed source code or empty, if the source did not contain any advice to transform
+     */
+    public Optional<String> transform(byte[] content) {
+        return transform(SourceFile.of(content));
+    }
+
+    /**
+     * @return the transformed source code without byte order mark or empty, if the source did not contain any advice to transform
+     * @see SourceFile#encodeIfChanged(String)
+     */
+    public Optional<String> transform(SourceFile source) {
+        return transform(source, null);
+    }
+
+    /**
+     * @param file the file the source was read from, which is only used to report events and may be {@code null}
+     */
+    public Optional<String> transform(SourceFile source, Path file) {
+        CompilationUnit compilationUnit = load(source.text(), file);
+        try {
+            if (transform(compilationUnit)) {
+                return Optional.of(print(compilationUnit));
+            }
+            return Optional.empty();
+        } finally {
+            release(compilationUnit);
+        }
+    }
+
+    /**
+     * Drops the per-file caches and printing state attached to the given compilation unit, which must not be
+     * transformed or printed afterwards. This keeps a compilation unit which is still referenced after its file is done
+     * from retaining resolved declarations and indexes, so that memory usage doesn't depend on the number of transformed files.
+     */
+    public void release(CompilationUnit compilationUnit) {
+        compilationUnit.findAll(MethodDeclaration.class).forEach(MethodIndex::discard);
+        AnnotationResolutionCache.invalidate(compilationUnit);
+        SplicePrinter.detach(compilationUnit);
+    }
+
+    public String print(CompilationUnit compilationUnit) {
+        long start = stats.start();
+        String output = TransformerEvents.run(TransformerEvents.PrintEvent::new, compilationUnit, () -> SplicePrinter.of(compilationUnit)
+                .map(SplicePrinter::print)
+                .orElseGet(() -> LexicalPreservingPrinter.print(compilationUnit)));
+        stats.stop(TransformerStats.Phase.PRINT, start);
+        return output;
+    }
+
+    public CompilationUnit load(InputStream file) {
+        long start = stats.start();
+        TransformerEvents.ParseEvent event = TransformerEvents.begin(TransformerEvents.ParseEvent::new, (Path) null);
+        try {
+            return setup(JavaParserAdapter.of(parser).parse(file), null, start);
+        } finally {
+            TransformerEvents.end(event);
+        }
+    }
+
+    public CompilationUnit load(String source) {
+        return load(source, null);
+    }
+
+    private CompilationUnit load(String source, Path file) {
+        long start = stats.start();
+        TransformerEvents.ParseEvent event = TransformerEvents.begin(TransformerEvents.ParseEvent::new, file);
+        try {
+            return setup(JavaParserAdapter.of(parser).parse(source), file, start);
+        } finally {
+            TransformerEvents.end(event);
+        }
+    }
+
+    private CompilationUnit setup(CompilationUnit compilationUnit, Path file, long parseStart) {
+        SplicePrinter.attach(compilationUnit);
+        TransformerStats.attach(compilationUnit, stats);
+        TransformerEvents.attach(compilationUnit, file);
+        stats.stop(TransformerStats.Phase.PARSE, parseStart);
+        stats.increment(TransformerStats.Counter.FILES_PARSED);
+        return compilationUnit;
+    }
+
+    public boolean transform(CompilationUnit input) {
+        // plans are created for all classes first, so that the advice classes can be prepared for printing before
+        // any of them is modified. Nested classes are planned and transformed before their enclosing classes.
+        List<PlannedClass> plannedClasses = new ArrayList<>();
+        input.walk(TreeTraversal.POSTORDER, node -> {
+            if (node instanceof ClassOrInterfaceDeclaration declaration) {
+                long start = stats.start();
+                Optional<AdviceTransformationPlan> plan = TransformerEvents.run(TransformerEvents.PlanEvent::new, declaration,
+                        () -> AdviceTransformationPlan.create(declaration, typeSolver));
+                stats.stop(TransformerStats.Phase.PLAN, start);
+                plan.ifPresent(adviceTransformationPlan -> plannedClasses.add(new PlannedClass(declaration, adviceTransformationPlan)));
+            }
+        });
+        SplicePrinter.of(input).ifPresent(printer -> {
+            // enclosing classes first, so that their nested classes are covered by them
+            for (int i = plannedClasses.size() - 1; i >= 0; i--) {
+                printer.track(plannedClasses.get(i).declaration());
+            }
+        });
+        boolean anyTransformation = false;
+        for (PlannedClass plannedClass : plannedClasses) {
+            long start = stats.start();
+            if (plannedClass.plan().transform()) {
+                anyTransformation = true;
+            }
+            stats.stop(TransformerStats.Phase.REWRITE, start);
+        }
+        return anyTransformation;
+    }
+
+    private record PlannedClass(ClassOrInterfaceDeclaration declaration, AdviceTransformationPlan plan) {
+    }
+
+}
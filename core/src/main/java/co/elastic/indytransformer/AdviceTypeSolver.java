@@ -0,0 +1,169 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The type solver used for resolving the advice annotations, it can be shared between threads and {@link AdviceTransformer}s.
+ * <p>
+ * Only JDK and bytebuddy advice types can be resolved, project-local types are answered as unsolved without consulting the classloader,
+ * unless a {@link ProjectTypeSolver} is configured.
+ * The advice types are not loaded from bytebuddy, but declared by the embedded {@link AdviceAnnotations#MODEL_RESOURCE},
+ * which is parsed and indexed eagerly on construction. This keeps bytebuddy off the runtime classpath and avoids reflection,
+ * which is required for building a native executable. All other lookups are cached,
+ * including failed ones: JavaParser probes many candidate names per simple type name (imports, same package, {@code java.lang}),
+ * most of which don't exist and would otherwise each cost a {@link ClassNotFoundException}.
+ * <p>
+ * As the probed names depend on the simple type names used in the transformed sources, the lookup cache is bounded and
+ * evicts the least recently used entries, so that its size doesn't grow with the size of the transformed repository.
+ * The size of the cache used by the {@link #getShared() shared instance} can be configured using the
+ * {@value #CACHE_SIZE_PROPERTY} system property.
+ */
+public class AdviceTypeSolver implements TypeSolver {
+
+    public static final String CACHE_SIZE_PROPERTY = "indytransformer.typeCacheSize";
+    public static final long DEFAULT_CACHE_SIZE = 4096;
+
+    /**
+     * The types declared by the advice model, which are never evicted.
+     */
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> adviceTypes = new HashMap<>();
+    private final Cache<String, SymbolReference<ResolvedReferenceTypeDeclaration>> resolvedTypes;
+    private final ReflectionTypeSolver reflectionTypeSolver;
+    private final TypeSolver projectTypeSolver;
+    private volatile TypeSolver parent;
+
+    public AdviceTypeSolver() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param maximumCacheSize the maximum number of cached JDK type lookups
+     */
+    public AdviceTypeSolver(long maximumCacheSize) {
+        this(maximumCacheSize, null);
+    }
+
+    /**
+     * @param maximumCacheSize  the maximum number of cached JDK type lookups
+     * @param projectTypeSolver resolves all types which are neither JDK nor advice types, may be {@code null}
+     */
+    public AdviceTypeSolver(long maximumCacheSize, TypeSolver projectTypeSolver) {
+        if (maximumCacheSize < 0) {
+            throw new IllegalArgumentException("The cache size must not be negative: " + maximumCacheSize);
+        }
+        resolvedTypes = CacheBuilder.newBuilder()
+                .maximumSize(maximumCacheSize)
+                .recordStats()
+                .build();
+        reflectionTypeSolver = new ReflectionTypeSolver(true);
+        // makes sure that the declarations created by the reflection solver use this solver for resolving further types
+        reflectionTypeSolver.setParent(this);
+        this.projectTypeSolver = projectTypeSolver;
+        if (projectTypeSolver != null) {
+            projectTypeSolver.setParent(this);
+        }
+        indexAdviceModel();
+    }
+
+    public static AdviceTypeSolver getShared() {
+        return SharedInstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @return the cache size configured by the {@value #CACHE_SIZE_PROPERTY} system property
+     */
+    static long configuredCacheSize() {
+        return Long.getLong(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+    }
+
+    private void indexAdviceModel() {
+        String source;
+        try (InputStream in = AdviceTypeSolver.class.getResourceAsStream(AdviceAnnotations.MODEL_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + AdviceAnnotations.MODEL_RESOURCE);
+            }
+            source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ParseResult<CompilationUnit> result = new JavaParser().parse(source);
+        CompilationUnit model = result.getResult()
+                .filter(cu -> result.isSuccessful())
+                .orElseThrow(() -> new IllegalStateException("Failed to parse " + AdviceAnnotations.MODEL_RESOURCE + ": " + result.getProblems()));
+        JavaParserFacade facade = JavaParserFacade.get(this);
+        for (TypeDeclaration<?> type : model.findAll(TypeDeclaration.class)) {
+            String name = type.getFullyQualifiedName().orElseThrow();
+            adviceTypes.put(name, SymbolReference.solved(facade.getTypeDeclaration(type)));
+        }
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        SymbolReference<ResolvedReferenceTypeDeclaration> result = adviceTypes.get(name);
+        if (result != null) {
+            return result;
+        }
+        if (!isJdkType(name)) {
+            return projectTypeSolver != null ? projectTypeSolver.tryToSolveType(name) : SymbolReference.unsolved();
+        }
+        result = resolvedTypes.getIfPresent(name);
+        if (result != null) {
+            return result;
+        }
+        // not using a loading cache, because resolving a type may recursively resolve other types
+        result = reflectionTypeSolver.tryToSolveType(name);
+        SymbolReference<ResolvedReferenceTypeDeclaration> concurrentResult = resolvedTypes.asMap().putIfAbsent(name, result);
+        return concurrentResult != null ? concurrentResult : result;
+    }
+
+    /**
+     * @return the hit, miss and eviction counts of the JDK type lookup cache since this solver has been created
+     */
+    public CacheStats cacheStats() {
+        return resolvedTypes.stats();
+    }
+
+    private static boolean isJdkType(String name) {
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        Objects.requireNonNull(parent);
+        if (this.parent != null) {
+            throw new IllegalStateException("This TypeSolver already has a parent.");
+        }
+        if (parent == this) {
+            throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+        }
+        this.parent = parent;
+    }
+
+    private static class SharedInstanceHolder {
+        private static final AdviceTypeSolver INSTANCE = new AdviceTypeSolver(configuredCacheSize());
+    }
+}
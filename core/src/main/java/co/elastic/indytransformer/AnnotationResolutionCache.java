@@ -0,0 +1,140 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.resolution.Context;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Resolves annotations to their qualified type names and memoizes the result per compilation unit.
+ * <p>
+ * The same annotations are resolved many times while planning and performing the transformation of a single advice class.
+ * Because an annotation name always resolves to the same type within the same enclosing type, the results are cached
+ * keyed by the enclosing type declaration and the annotation name as written in the source.
+ * <p>
+ * In addition, names whose first segment is imported from {@code net.bytebuddy.asm}
+ * (e.g. {@code Advice.OnMethodEnter} or {@code AssignReturned.ToReturned}) are resolved purely based on the imports,
+ * without involving the symbol solver at all.
+ */
+public class AnnotationResolutionCache {
+
+    private static final DataKey<AnnotationResolutionCache> CACHE_KEY = new DataKey<>() {
+    };
+
+    private static final String BYTEBUDDY_ASM_PACKAGE = "net.bytebuddy.asm.";
+
+    /**
+     * Maps simple names to the fully qualified names of the corresponding single type imports from {@code net.bytebuddy.asm}.
+     */
+    private final Map<String, String> bytebuddyImports = new HashMap<>();
+    /**
+     * The simple names of all types declared in the compilation unit. Those could shadow imported names.
+     */
+    private final Set<String> declaredTypeNames = new HashSet<>();
+    private final Map<Node, Map<String, Optional<String>>> resolvedNames = new IdentityHashMap<>();
+    private final TransformerStats stats;
+
+    private AnnotationResolutionCache(CompilationUnit compilationUnit) {
+        stats = TransformerStats.of(compilationUnit);
+        for (ImportDeclaration importDecl : compilationUnit.getImports()) {
+            String importedName = importDecl.getNameAsString();
+            if (!importDecl.isStatic() && !importDecl.isAsterisk() && importedName.startsWith(BYTEBUDDY_ASM_PACKAGE)) {
+                bytebuddyImports.put(importDecl.getName().getIdentifier(), importedName);
+            }
+        }
+        compilationUnit.walk(TypeDeclaration.class, type -> declaredTypeNames.add(type.getNameAsString()));
+    }
+
+    /**
+     * Resolves the qualified name of the type of the given annotation.
+     *
+     * @return the qualified name or empty, if the annotation could not be resolved
+     */
+    public static Optional<String> resolveQualifiedName(AnnotationExpr annotation, TypeSolver typeSolver) {
+        Optional<CompilationUnit> compilationUnit = annotation.findCompilationUnit();
+        if (compilationUnit.isEmpty()) {
+            return resolveWithSymbolSolver(annotation, typeSolver);
+        }
+        AnnotationResolutionCache cache = compilationUnit.get().containsData(CACHE_KEY)
+                ? compilationUnit.get().getData(CACHE_KEY)
+                : null;
+        if (cache == null) {
+            cache = new AnnotationResolutionCache(compilationUnit.get());
+            compilationUnit.get().setData(CACHE_KEY, cache);
+        }
+        return cache.resolve(annotation, typeSolver);
+    }
+
+    /**
+     * Discards the cached resolution results, must be called when the imports of the compilation unit change.
+     */
+    public static void invalidate(CompilationUnit compilationUnit) {
+        compilationUnit.removeData(CACHE_KEY);
+    }
+
+    private Optional<String> resolve(AnnotationExpr annotation, TypeSolver typeSolver) {
+        String name = annotation.getNameAsString();
+        Optional<String> importedName = resolveFromBytebuddyImports(name);
+        if (importedName.isPresent()) {
+            stats.increment(TransformerStats.Counter.ANNOTATION_IMPORT_HITS);
+            return importedName;
+        }
+        Node enclosingType = annotation.findAncestor(TypeDeclaration.class)
+                .map(Node.class::cast)
+                .orElseGet(() -> annotation.findCompilationUnit().get());
+        Map<String, Optional<String>> namesInScope = resolvedNames.computeIfAbsent(enclosingType, key -> new HashMap<>());
+        Optional<String> result = namesInScope.get(name);
+        if (result == null) {
+            long start = stats.start();
+            TransformerEvents.AnnotationResolutionEvent event =
+                    TransformerEvents.begin(TransformerEvents.AnnotationResolutionEvent::new, annotation);
+            try {
+                result = resolveWithSymbolSolver(annotation, typeSolver);
+                if (event != null) {
+                    event.resolved(name, result);
+                }
+            } finally {
+                TransformerEvents.end(event);
+            }
+            stats.stop(TransformerStats.Phase.SYMBOL_RESOLUTION, start);
+            stats.increment(TransformerStats.Counter.ANNOTATION_RESOLUTIONS);
+            namesInScope.put(name, result);
+        } else {
+            stats.increment(TransformerStats.Counter.ANNOTATION_CACHE_HITS);
+        }
+        return result;
+    }
+
+    private Optional<String> resolveFromBytebuddyImports(String name) {
+        int firstDot = name.indexOf('.');
+        String firstSegment = firstDot == -1 ? name : name.substring(0, firstDot);
+        String importedName = bytebuddyImports.get(firstSegment);
+        if (importedName == null || declaredTypeNames.contains(firstSegment)) {
+            return Optional.empty();
+        }
+        return Optional.of(firstDot == -1 ? importedName : importedName + name.substring(firstDot));
+    }
+
+    private static Optional<String> resolveWithSymbolSolver(AnnotationExpr annotation, TypeSolver typeSolver) {
+        Context context = JavaParserFactory.getContext(annotation, typeSolver);
+        SymbolReference<ResolvedTypeDeclaration> resolvedType = context.solveType(annotation.getNameAsString(), null);
+        if (resolvedType.isSolved()) {
+            return Optional.of(resolvedType.getCorrespondingDeclaration().getQualifiedName());
+        }
+        return Optional.empty();
+    }
+}
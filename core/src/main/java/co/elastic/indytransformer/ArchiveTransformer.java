@@ -0,0 +1,410 @@
+package co.elastic.indytransformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Transforms the java sources within a jar or zip archive, e.g. a sources jar, without extracting it.
+ * <p>
+ * The entries are found using the central directory of the archive. Only the java sources are decompressed, and only
+ * the transformed ones are compressed again. All other entries are copied to the new archive as they are, including
+ * their local headers and compressed data, using {@link FileChannel#transferTo} for consecutive runs of entries.
+ * The new archive is written next to the original one and replaces it atomically. If no entry changed, nothing is written.
+ * <p>
+ * ZIP64 archives are not supported. Encrypted entries and entries using other compression methods than stored and
+ * deflated are copied without transforming them.
+ */
+public class ArchiveTransformer {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final long MAX_32_BIT_VALUE = 0xFFFFFFFFL;
+
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    /**
+     * @param header the complete central directory record, including name, extra field and comment
+     */
+    private record Entry(String name, ByteBuffer header, int flags, int method, long compressedSize, long size,
+                         long localHeaderOffset) {
+    }
+
+    private record EntryOutcome(TransformOutcome outcome, byte[] output) {
+    }
+
+    private final AdviceTransformer transformer;
+    private final boolean usePrefilter;
+    private final TransformerStats stats;
+
+    public ArchiveTransformer(AdviceTransformer transformer, boolean usePrefilter, TransformerStats stats) {
+        this.transformer = transformer;
+        this.usePrefilter = usePrefilter;
+        this.stats = stats;
+    }
+
+    public static boolean isArchive(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return (name.endsWith(".jar") || name.endsWith(".zip")) && Files.isRegularFile(file);
+    }
+
+    /**
+     * Transforms the java sources within the given archive in place. The results of the java sources are passed to
+     * the consumer in the order of the central directory, using the archive path resolved against the entry name as file.
+     *
+     * @return the number of java sources in the archive
+     * @throws IOException if the archive can't be read or written, e.g. because it is not a valid archive
+     */
+    public long transform(Path archive, Consumer<TransformPipeline.FileResult> resultConsumer) throws IOException {
+        try (FileChannel input = FileChannel.open(archive, StandardOpenOption.READ)) {
+            ByteBuffer endOfCentralDirectory = findEndOfCentralDirectory(input);
+            List<Entry> entries = readCentralDirectory(input, endOfCentralDirectory);
+            long found = 0;
+            try (Output output = new Output(archive, input)) {
+                for (Entry entry : entries) {
+                    long entryEnd = findEntryEnd(input, entry);
+                    if (!entry.name().endsWith(".java")) {
+                        output.copy(entry, entryEnd);
+                        continue;
+                    }
+                    found++;
+                    long start = System.nanoTime();
+                    TransformOutcome outcome = null;
+                    Throwable failure = null;
+                    try {
+                        EntryOutcome entryOutcome = transform(input, entry);
+                        outcome = entryOutcome.outcome();
+                        if (outcome == TransformOutcome.TRANSFORMED) {
+                            long writeStart = stats.start();
+                            output.write(entry, entryOutcome.output());
+                            stats.stop(TransformerStats.Phase.WRITE, writeStart);
+                        } else {
+                            output.copy(entry, entryEnd);
+                        }
+                    } catch (IOException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        // like for directories, a single broken source doesn't prevent transforming the others
+                        failure = e;
+                        output.copy(entry, entryEnd);
+                    }
+                    long nanos = System.nanoTime() - start;
+                    Path file = archive.resolve(entry.name());
+                    stats.recordFile(file, nanos);
+                    resultConsumer.accept(new TransformPipeline.FileResult(file, outcome, entry.size(), nanos, failure, null));
+                }
+                output.finish(endOfCentralDirectory);
+            }
+            return found;
+        }
+    }
+
+    private EntryOutcome transform(FileChannel input, Entry entry) throws IOException {
+        if ((entry.flags() & FLAG_ENCRYPTED) != 0 || (entry.method() != METHOD_STORED && entry.method() != METHOD_DEFLATED)) {
+            return new EntryOutcome(TransformOutcome.UNCHANGED, null);
+        }
+        long start = stats.start();
+        SourceFile source = SourceFile.of(readContent(input, entry));
+        stats.stop(TransformerStats.Phase.READ, start);
+        if (usePrefilter) {
+            start = stats.start();
+            boolean mayContainAdvice = AdvicePrefilter.mayContainAdvice(source.content());
+            stats.stop(TransformerStats.Phase.PREFILTER, start);
+            if (!mayContainAdvice) {
+                return new EntryOutcome(TransformOutcome.NO_ADVICE, null);
+            }
+        }
+        return transformer.transform(source).flatMap(source::encodeIfChanged)
+                .map(output -> new EntryOutcome(TransformOutcome.TRANSFORMED, output))
+                .orElseGet(() -> new EntryOutcome(TransformOutcome.UNCHANGED, null));
+    }
+
+    private static ByteBuffer findEndOfCentralDirectory(FileChannel input) throws IOException {
+        long archiveSize = input.size();
+        int tailSize = (int) Math.min(archiveSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = read(input, archiveSize - tailSize, tailSize);
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                && i + END_OF_CENTRAL_DIRECTORY_SIZE + Short.toUnsignedInt(tail.getShort(i + 20)) == tailSize) {
+                return tail.slice(i, tailSize - i).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        throw new IOException("Not a zip archive, the end of the central directory is missing");
+    }
+
+    private static List<Entry> readCentralDirectory(FileChannel input, ByteBuffer endOfCentralDirectory) throws IOException {
+        int entryCount = Short.toUnsignedInt(endOfCentralDirectory.getShort(10));
+        long size = Integer.toUnsignedLong(endOfCentralDirectory.getInt(12));
+        long offset = Integer.toUnsignedLong(endOfCentralDirectory.getInt(16));
+        if (entryCount == 0xFFFF || size == MAX_32_BIT_VALUE || offset == MAX_32_BIT_VALUE) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+        ByteBuffer centralDirectory = read(input, offset, (int) size);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (centralDirectory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory entry at offset " + (offset + position));
+            }
+            int nameLength = Short.toUnsignedInt(centralDirectory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(centralDirectory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(centralDirectory.getShort(position + 32));
+            int headerLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            ByteBuffer header = centralDirectory.slice(position, headerLength).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] name = new byte[nameLength];
+            header.get(CENTRAL_HEADER_SIZE, name);
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), header,
+                    Short.toUnsignedInt(header.getShort(8)),
+                    Short.toUnsignedInt(header.getShort(10)),
+                    Integer.toUnsignedLong(header.getInt(20)),
+                    Integer.toUnsignedLong(header.getInt(24)),
+                    Integer.toUnsignedLong(header.getInt(42)));
+            if (entry.compressedSize() == MAX_32_BIT_VALUE || entry.size() == MAX_32_BIT_VALUE
+                || entry.localHeaderOffset() == MAX_32_BIT_VALUE) {
+                throw new IOException("ZIP64 archives are not supported");
+            }
+            entries.add(entry);
+            position += headerLength;
+        }
+        return entries;
+    }
+
+    private static long dataOffset(FileChannel input, Entry entry) throws IOException {
+        ByteBuffer localHeader = read(input, entry.localHeaderOffset(), LOCAL_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header of " + entry.name());
+        }
+        return entry.localHeaderOffset() + LOCAL_HEADER_SIZE
+               + Short.toUnsignedInt(localHeader.getShort(26))
+               + Short.toUnsignedInt(localHeader.getShort(28));
+    }
+
+    /**
+     * @return the offset after the local header, the data and the data descriptor of the entry
+     */
+    private static long findEntryEnd(FileChannel input, Entry entry) throws IOException {
+        long dataEnd = dataOffset(input, entry) + entry.compressedSize();
+        if ((entry.flags() & FLAG_DATA_DESCRIPTOR) == 0) {
+            return dataEnd;
+        }
+        // the signature of the data descriptor is optional
+        boolean hasSignature = dataEnd + 4 <= input.size() && read(input, dataEnd, 4).getInt(0) == DATA_DESCRIPTOR_SIGNATURE;
+        return dataEnd + (hasSignature ? 16 : 12);
+    }
+
+    private static byte[] readContent(FileChannel input, Entry entry) throws IOException {
+        ByteBuffer data = read(input, dataOffset(input, entry), (int) entry.compressedSize());
+        if (entry.method() == METHOD_STORED) {
+            return data.array();
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] content = new byte[(int) entry.size()];
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int inflated = inflater.inflate(content, length, content.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != content.length) {
+                throw new IOException("Truncated compressed data of " + entry.name());
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed data of " + entry.name(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer read(FileChannel input, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (input.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive at offset " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * The new archive. It is only created once the first entry is changed, until then the entries to copy are only remembered.
+     */
+    private static final class Output implements AutoCloseable {
+        private final Path archive;
+        private final FileChannel input;
+        private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+        private final List<long[]> pendingCopies = new ArrayList<>();
+        private Path target;
+        private Path tempFile;
+        private FileChannel output;
+        private long position = 0;
+        private int entryCount = 0;
+        private boolean finished = false;
+
+        private Output(Path archive, FileChannel input) {
+            this.archive = archive;
+            this.input = input;
+        }
+
+        void copy(Entry entry, long entryEnd) throws IOException {
+            addCentralHeader(entry.header(), position);
+            long[] last = pendingCopies.isEmpty() ? null : pendingCopies.get(pendingCopies.size() - 1);
+            if (last != null && last[1] == entry.localHeaderOffset()) {
+                last[1] = entryEnd;
+            } else {
+                pendingCopies.add(new long[]{entry.localHeaderOffset(), entryEnd});
+            }
+            position += entryEnd - entry.localHeaderOffset();
+            if (output != null && pendingCopies.size() > 1) {
+                flushCopies(pendingCopies.size() - 1);
+            }
+        }
+
+        void write(Entry entry, byte[] content) throws IOException {
+            if (output == null) {
+                target = SourceWriter.resolveTarget(archive);
+                tempFile = SourceWriter.createTempFile(target);
+                output = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+            }
+            flushCopies(pendingCopies.size());
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            byte[] data = entry.method() == METHOD_DEFLATED ? deflate(content) : content;
+            int flags = entry.flags() & ~FLAG_DATA_DESCRIPTOR;
+            byte[] name = new byte[Short.toUnsignedInt(entry.header().getShort(28))];
+            entry.header().get(CENTRAL_HEADER_SIZE, name);
+
+            ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            localHeader.putInt(LOCAL_HEADER_SIGNATURE)
+                    .putShort(entry.header().getShort(6))
+                    .putShort((short) flags)
+                    .putShort((short) entry.method())
+                    .putShort(entry.header().getShort(12))
+                    .putShort(entry.header().getShort(14))
+                    .putInt((int) crc.getValue())
+                    .putInt(data.length)
+                    .putInt(content.length)
+                    .putShort((short) name.length)
+                    .putShort((short) 0)
+                    .put(name);
+            writeFully(localHeader.flip());
+            writeFully(ByteBuffer.wrap(data));
+
+            ByteBuffer header = ByteBuffer.allocate(entry.header().capacity()).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(entry.header().duplicate().clear());
+            header.putShort(8, (short) flags)
+                    .putInt(16, (int) crc.getValue())
+                    .putInt(20, data.length)
+                    .putInt(24, content.length);
+            addCentralHeader(header, position);
+            position += localHeader.capacity() + data.length;
+        }
+
+        void finish(ByteBuffer endOfCentralDirectory) throws IOException {
+            if (output == null) {
+                // nothing changed, keep the archive as it is
+                return;
+            }
+            flushCopies(pendingCopies.size());
+            long centralDirectoryOffset = position;
+            checkOffset(centralDirectoryOffset);
+            writeFully(ByteBuffer.wrap(centralDirectory.toByteArray()));
+            ByteBuffer end = ByteBuffer.allocate(endOfCentralDirectory.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+            end.put(endOfCentralDirectory.duplicate().clear());
+            end.putShort(4, (short) 0)
+                    .putShort(6, (short) 0)
+                    .putShort(8, (short) entryCount)
+                    .putShort(10, (short) entryCount)
+                    .putInt(12, centralDirectory.size())
+                    .putInt(16, (int) centralDirectoryOffset);
+            writeFully(end.flip());
+            output.force(false);
+            output.close();
+            SourceWriter.replace(tempFile, target);
+            finished = true;
+        }
+
+        private void addCentralHeader(ByteBuffer header, long localHeaderOffset) throws IOException {
+            checkOffset(localHeaderOffset);
+            byte[] bytes = new byte[header.capacity()];
+            header.get(0, bytes);
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(42, (int) localHeaderOffset);
+            centralDirectory.write(bytes);
+            entryCount++;
+        }
+
+        private void flushCopies(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                long[] range = pendingCopies.remove(0);
+                long transferred = 0;
+                while (transferred < range[1] - range[0]) {
+                    transferred += input.transferTo(range[0] + transferred, range[1] - range[0] - transferred, output);
+                }
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+        }
+
+        private static byte[] deflate(byte[] content) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static void checkOffset(long offset) throws IOException {
+            if (offset >= MAX_32_BIT_VALUE) {
+                throw new IOException("The transformed archive would require ZIP64, which is not supported");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (output != null && !finished) {
+                output.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package co.elastic.indytransformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Determines the java source files to transform from an explicit list of paths or a local git revision range,
+ * instead of traversing the entire directory.
+ */
+public class ChangedFiles {
+
+    /**
+     * Resolves the given paths against the root directory and keeps only existing java source files.
+     */
+    public static List<Path> fromPaths(Path rootDir, Collection<String> paths) {
+        return paths.stream()
+                .map(String::trim)
+                .filter(path -> path.endsWith(".java"))
+                .map(rootDir::resolve)
+                .filter(Files::isRegularFile)
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Reads the paths to transform from the given file, one per line. {@code -} reads the paths from stdin.
+     */
+    public static List<Path> fromPathList(Path rootDir, String pathListFile) throws IOException {
+        List<String> lines;
+        if (pathListFile.equals("-")) {
+            lines = new String(System.in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        } else {
+            lines = Files.readAllLines(Path.of(pathListFile));
+        }
+        return fromPaths(rootDir, lines);
+    }
+
+    /**
+     * Lists the java files added, copied, modified or renamed within the given git revision range using the local git CLI.
+     * A single revision compares that revision with the working tree, so uncommitted changes and untracked files
+     * not excluded by {@code .gitignore} are included as well.
+     */
+    public static List<Path> fromGitDiff(Path rootDir, String revisionRange) throws IOException, InterruptedException {
+        // --relative restricts the output to the directory to transform and prints paths relative to it
+        List<String> paths = new ArrayList<>(git(rootDir, "diff", "--name-only", "-z", "--no-renames", "--diff-filter=ACMR", "--relative", revisionRange, "--"));
+        if (!revisionRange.contains("..")) {
+            // git diff doesn't report untracked files, ls-files lists them relative to the directory to transform
+            paths.addAll(git(rootDir, "ls-files", "--others", "--exclude-standard", "-z", "--"));
+        }
+        return fromPaths(rootDir, paths);
+    }
+
+    private static List<String> git(Path workingDir, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(List.of(args));
+        Process git = new ProcessBuilder(command)
+                .directory(workingDir.toFile())
+                .start();
+        git.getOutputStream().close();
+        CompletableFuture<String> stderr = CompletableFuture.supplyAsync(() -> readFully(git.getErrorStream()));
+        String stdout = readFully(git.getInputStream());
+        int exitCode = git.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("git " + args[0] + " failed with exit code " + exitCode + ": " + stderr.join().trim());
+        }
+        List<String> paths = new ArrayList<>();
+        for (String path : stdout.split("\0")) {
+            if (!path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private static String readFully(InputStream stream) {
+        try (stream) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            stream.transferTo(buffer);
+            return buffer.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package co.elastic.indytransformer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a warmed up transformer resident and serves transformation requests, so that single files can be transformed
+ * without paying for the JVM startup and the warm-up of the parser and the type solver.
+ * <p>
+ * Requests and responses are newline delimited JSON objects, exchanged either via stdin / stdout or via a Unix domain socket:
+ * <pre>
+ * {"id": 1, "path": "src/main/java/MyAdvice.java"}  -&gt;  {"id": 1, "outcome": "TRANSFORMED"}
+ * {"id": 2, "source": "package ..."}                 -&gt;  {"id": 2, "outcome": "TRANSFORMED", "source": "package ..."}
+ * {"id": 3, "op": "ping"}                            -&gt;  {"id": 3, "ok": true}
+ * {"id": 4, "op": "shutdown"}                        -&gt;  {"id": 4, "ok": true}
+ * </pre>
+ * Files given by path are transformed in place, relative paths are resolved against the working directory of the daemon.
+ * Source text is returned only if it was changed. Failed requests are answered with an {@code "error"} message.
+ */
+public class Daemon {
+
+    private static final String WARM_UP_SOURCE = """
+            import net.bytebuddy.asm.Advice;
+
+            public class WarmUpAdvice {
+                @Advice.OnMethodEnter
+                public static void enter(@Advice.Argument(value = 0, readOnly = false) String arg, @Advice.Local("start") long start) {
+                    start = System.nanoTime();
+                    arg = arg + start;
+                }
+
+                @Advice.OnMethodExit
+                public static void exit(@Advice.Return(readOnly = false) String result, @Advice.Local("start") long start) {
+                    result = result + (System.nanoTime() - start);
+                }
+            }
+            """;
+
+    private final boolean usePrefilter;
+    // JavaParser is not thread safe, therefore every connection gets its own parser. The type solver is shared.
+    private final ThreadLocal<AdviceTransformer> transformers = ThreadLocal.withInitial(AdviceTransformer::new);
+    private final ThreadLocal<SourceFile.Buffer> readBuffers = ThreadLocal.withInitial(SourceFile.Buffer::new);
+    private volatile boolean shutdown;
+    private volatile ServerSocketChannel server;
+
+    public Daemon(boolean usePrefilter) {
+        this.usePrefilter = usePrefilter;
+    }
+
+    /**
+     * Loads the parser and transformer classes and populates the type solver by transforming a sample advice.
+     */
+    public void warmUp() {
+        transformers.get().transform(WARM_UP_SOURCE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Serves requests from the given reader until it reaches the end of input or a shutdown was requested.
+     */
+    public void serve(BufferedReader in, Writer out) throws IOException {
+        String line;
+        while (!shutdown && (line = in.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            out.write(handle(line));
+            out.write('\n');
+            out.flush();
+        }
+        // stop accepting connections only after the response to the shutdown request has been sent
+        ServerSocketChannel serverChannel = server;
+        if (shutdown && serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    public void serveStdio() throws IOException {
+        serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Listens on the given Unix domain socket until a shutdown was requested. Each connection is served by its own thread.
+     */
+    public void serveSocket(Path socketPath) throws IOException {
+        Files.deleteIfExists(socketPath);
+        ExecutorService connections = Executors.newCachedThreadPool();
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server = serverChannel;
+            serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+            while (!shutdown) {
+                SocketChannel connection;
+                try {
+                    connection = serverChannel.accept();
+                } catch (AsynchronousCloseException e) {
+                    break;
+                }
+                connections.submit(() -> {
+                    try (SocketChannel channel = connection) {
+                        serve(new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8)),
+                                Channels.newWriter(channel, StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        System.err.println("Connection failed: " + e.getMessage());
+                    }
+                    return null;
+                });
+            }
+        } finally {
+            connections.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    /**
+     * @return the response to the given request line, without the trailing newline
+     */
+    String handle(String requestLine) {
+        Object id = null;
+        try {
+            if (!(Json.parse(requestLine) instanceof Map<?, ?> request)) {
+                throw new IllegalArgumentException("The request must be a JSON object");
+            }
+            id = request.get("id");
+            Object op = request.get("op");
+            if (op == null || "transform".equals(op)) {
+                return transform(id, request);
+            } else if ("ping".equals(op)) {
+                return response(id) + ", \"ok\": true}";
+            } else if ("shutdown".equals(op)) {
+                shutdown = true;
+                return response(id) + ", \"ok\": true}";
+            }
+            throw new IllegalArgumentException("Unknown op: " + op);
+        } catch (Throwable t) {
+            // like in the pipeline, errors such as a StackOverflowError while parsing a deeply nested source only fail the request
+            String message = t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+            return response(id) + ", \"error\": " + Json.quote(message) + "}";
+        }
+    }
+
+    private String transform(Object id, Map<?, ?> request) throws IOException {
+        if (request.get("path") instanceof String path) {
+            Path file = Paths.get(path).toAbsolutePath();
+            // read once for both the prefilter and the transformation, like the pipeline does
+            SourceFile source = SourceFile.read(file, readBuffers.get());
+            TransformOutcome outcome;
+            if (usePrefilter && !AdvicePrefilter.mayContainAdvice(source.content())) {
+                outcome = TransformOutcome.NO_ADVICE;
+            } else {
+                outcome = transformers.get().transformInPlace(source, file) ? TransformOutcome.TRANSFORMED : TransformOutcome.UNCHANGED;
+            }
+            return response(id) + ", \"outcome\": " + Json.quote(outcome.name()) + "}";
+        } else if (request.get("source") instanceof String source) {
+            byte[] content = source.getBytes(StandardCharsets.UTF_8);
+            if (usePrefilter && !AdvicePrefilter.mayContainAdvice(ByteBuffer.wrap(content))) {
+                return response(id) + ", \"outcome\": " + Json.quote(TransformOutcome.NO_ADVICE.name()) + "}";
+            }
+            Optional<String> output = transformers.get().transform(content);
+            if (output.isEmpty()) {
+                return response(id) + ", \"outcome\": " + Json.quote(TransformOutcome.UNCHANGED.name()) + "}";
+            }
+            return response(id) + ", \"outcome\": " + Json.quote(TransformOutcome.TRANSFORMED.name())
+                   + ", \"source\": " + Json.quote(output.get()) + "}";
+        }
+        throw new IllegalArgumentException("A transform request requires either a path or a source");
+    }
+
+    /**
+     * @return the start of the response object containing the request id, without the closing brace
+     */
+    private static String response(Object id) {
+        String idJson;
+        if (id instanceof String stringId) {
+            idJson = Json.quote(stringId);
+        } else if (id instanceof Number || id instanceof Boolean) {
+            idJson = id.toString();
+        } else {
+            idJson = "null";
+        }
+        return "{\"id\": " + idJson;
+    }
+}
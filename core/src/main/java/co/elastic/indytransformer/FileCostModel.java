@@ -0,0 +1,171 @@
+package co.elastic.indytransformer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimates how long it takes to process a file, so that the {@link TransformPipeline} can start with the most expensive files.
+ * <p>
+ * Files which were processed by a previous run are estimated by their recorded processing time. All other files are
+ * estimated by their size, using the average time per byte of the recorded files. Files with a few large advice classes
+ * otherwise tend to be picked up last and determine the wall-clock time of the run on their own.
+ * <p>
+ * The recorded timings can be stored in a cache directory next to the {@link IncrementalIndex}. Timings of files which
+ * were not estimated or recorded during the run and don't exist anymore are dropped when saving. Instances are thread safe.
+ */
+public class FileCostModel {
+
+    private static final String HEADER = "# indy-advice-transformer file timings v1";
+    private static final String TIMINGS_FILE_NAME = "file-timings.tsv";
+
+    /**
+     * Used for files of unknown cost if nothing has been recorded yet. Only the ratio to the recorded timings matters.
+     */
+    private static final double DEFAULT_NANOS_PER_BYTE = 1000;
+
+    private record Timing(long size, long nanos) {
+    }
+
+    private final Path timingsFile;
+    private final Map<Path, Timing> timings = new ConcurrentHashMap<>();
+    private final Set<Path> seen = ConcurrentHashMap.newKeySet();
+    private final LongAdder recordedBytes = new LongAdder();
+    private final LongAdder recordedNanos = new LongAdder();
+
+    private FileCostModel(Path timingsFile) {
+        this.timingsFile = timingsFile;
+    }
+
+    /**
+     * Creates a model without recorded timings, which can't be saved.
+     */
+    public static FileCostModel create() {
+        return new FileCostModel(null);
+    }
+
+    /**
+     * Loads the timings recorded in the given cache directory. If there are none yet, an empty model is returned.
+     */
+    public static FileCostModel load(Path cacheDir) throws IOException {
+        Path timingsFile = cacheDir.resolve(TIMINGS_FILE_NAME);
+        FileCostModel model = new FileCostModel(timingsFile);
+        if (!Files.exists(timingsFile)) {
+            return model;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(timingsFile, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                // unknown format, start from scratch
+                return model;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t", 3);
+                if (columns.length != 3) {
+                    continue;
+                }
+                model.put(Path.of(columns[2]), new Timing(Long.parseLong(columns[0]), Long.parseLong(columns[1])));
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Estimates the processing time of the given file in nanoseconds.
+     *
+     * @param size the size of the file in bytes, or a negative value if it is not known yet
+     */
+    public long estimate(Path file, long size) {
+        Path key = toKey(file);
+        seen.add(key);
+        Timing timing = timings.get(key);
+        if (timing != null && (size < 0 || size == timing.size())) {
+            return timing.nanos();
+        }
+        if (size < 0) {
+            try {
+                size = Files.size(file);
+            } catch (IOException e) {
+                // the failure is reported when the file is read
+                return 0;
+            }
+        }
+        return (long) (size * nanosPerByte());
+    }
+
+    /**
+     * Estimates the processing time of the given file in nanoseconds without accessing it, e.g. for files which are
+     * likely skipped anyway. Files without recorded timing are estimated by the average recorded time per file.
+     */
+    public long estimate(Path file) {
+        Path key = toKey(file);
+        seen.add(key);
+        Timing timing = timings.get(key);
+        if (timing != null) {
+            return timing.nanos();
+        }
+        int recordedFiles = timings.size();
+        return recordedFiles > 0 ? recordedNanos.sum() / recordedFiles : 0;
+    }
+
+    /**
+     * Records the time it took to process the given file, replacing the timing of previous runs.
+     */
+    public void record(Path file, long size, long nanos) {
+        Path key = toKey(file);
+        seen.add(key);
+        put(key, new Timing(size, nanos));
+    }
+
+    private void put(Path key, Timing timing) {
+        Timing previous = timings.put(key, timing);
+        if (previous != null) {
+            recordedBytes.add(-previous.size());
+            recordedNanos.add(-previous.nanos());
+        }
+        recordedBytes.add(timing.size());
+        recordedNanos.add(timing.nanos());
+    }
+
+    private double nanosPerByte() {
+        long bytes = recordedBytes.sum();
+        long nanos = recordedNanos.sum();
+        if (bytes <= 0 || nanos <= 0) {
+            return DEFAULT_NANOS_PER_BYTE;
+        }
+        return (double) nanos / bytes;
+    }
+
+    public void save() throws IOException {
+        if (timingsFile == null) {
+            throw new IllegalStateException("The model was not loaded from a cache directory");
+        }
+        Files.createDirectories(timingsFile.getParent());
+        Path tempFile = Files.createTempFile(timingsFile.getParent(), TIMINGS_FILE_NAME, ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<Path, Timing> entry : timings.entrySet()) {
+                // only the files which were not part of this run are checked, e.g. all files if only the changed ones were run
+                if (!seen.contains(entry.getKey()) && !Files.exists(entry.getKey())) {
+                    continue;
+                }
+                writer.write(entry.getValue().size() + "\t" + entry.getValue().nanos() + "\t" + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, timingsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path toKey(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
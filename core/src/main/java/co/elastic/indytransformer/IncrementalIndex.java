@@ -0,0 +1,208 @@
+package co.elastic.indytransformer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the files processed by previous runs, so that unchanged files can be skipped without reading or parsing them.
+ * <p>
+ * For every file the size, modification time and SHA-256 hash of the content after processing is stored together with the outcome.
+ * A file is considered unchanged if its size and modification time match. Files which were modified in the same
+ * timestamp granularity window as the index itself was written are additionally verified using the content hash,
+ * because they could have been changed again without changing their modification time.
+ * <p>
+ * The header of the index contains the {@linkplain ResultCache#toolVersion() tool version} and the options affecting the
+ * result. An index written by another version or with other options is discarded, so that all files are processed again
+ * after an upgrade.
+ * <p>
+ * Instances are thread safe.
+ */
+public class IncrementalIndex {
+
+    private static final String HEADER_PREFIX = "# indy-advice-transformer incremental index v2\t";
+    private static final String INDEX_FILE_NAME = "incremental-index.tsv";
+
+    /**
+     * Modification times closer than this to the time when the index was written are not trusted.
+     */
+    private static final long RACY_MODIFICATION_WINDOW_MILLIS = 2000;
+
+    private record Entry(long size, long lastModified, String contentHash, TransformOutcome outcome) {
+    }
+
+    private final Path indexFile;
+    private final String header;
+    private final long indexTimestamp;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * The files which were checked or recorded since the index was loaded.
+     */
+    private final Set<Path> seen = ConcurrentHashMap.newKeySet();
+
+    private IncrementalIndex(Path indexFile, String header, long indexTimestamp) {
+        this.indexFile = indexFile;
+        this.header = header;
+        this.indexTimestamp = indexTimestamp;
+    }
+
+    /**
+     * Loads the index from the given cache directory. If there is no index yet, an empty one is returned.
+     */
+    public static IncrementalIndex load(Path cacheDir) throws IOException {
+        return load(cacheDir, "");
+    }
+
+    /**
+     * Loads the index from the given cache directory. If there is no index yet or it was written by another version
+     * or with other options, an empty one is returned.
+     *
+     * @param options describes the options which affect the transformation result
+     */
+    public static IncrementalIndex load(Path cacheDir, String options) throws IOException {
+        Path indexFile = cacheDir.resolve(INDEX_FILE_NAME);
+        String header = HEADER_PREFIX + ResultCache.toolVersion() + "\t" + options;
+        if (!Files.exists(indexFile)) {
+            return new IncrementalIndex(indexFile, header, Long.MIN_VALUE);
+        }
+        IncrementalIndex index = new IncrementalIndex(indexFile, header, Files.getLastModifiedTime(indexFile).toMillis());
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!header.equals(line)) {
+                // unknown format, another version or other options, start from scratch
+                return new IncrementalIndex(indexFile, header, Long.MIN_VALUE);
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t", 5);
+                if (columns.length != 5) {
+                    continue;
+                }
+                Entry entry = new Entry(Long.parseLong(columns[1]), Long.parseLong(columns[2]), columns[3], TransformOutcome.valueOf(columns[0]));
+                index.entries.put(Path.of(columns[4]), entry);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return true, if the given file has been processed by a previous run, without checking whether it has been modified since
+     */
+    public boolean contains(Path file) {
+        return entries.containsKey(toKey(file));
+    }
+
+    /**
+     * Checks whether the given file has been processed by a previous run and has not been modified since.
+     */
+    public boolean isUpToDate(Path file) throws IOException {
+        Path key = toKey(file);
+        seen.add(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (attributes.size() != entry.size()) {
+            return false;
+        }
+        if (lastModified == entry.lastModified() && lastModified < indexTimestamp - RACY_MODIFICATION_WINDOW_MILLIS) {
+            return true;
+        }
+        if (hash(file).equals(entry.contentHash())) {
+            entries.put(key, new Entry(entry.size(), lastModified, entry.contentHash(), entry.outcome()));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the outcome of processing the given file, without reading it again.
+     *
+     * @param lastModified the modification time of the file before it was read or, if it has been transformed, after it
+     *                     has been written. If the file is modified afterwards, the modification time won't match anymore.
+     * @param content      the content which has been processed or written
+     */
+    public void record(Path file, TransformOutcome outcome, long lastModified, ByteBuffer content) {
+        Path key = toKey(file);
+        seen.add(key);
+        entries.put(key, new Entry(content.remaining(), lastModified, hash(content), outcome));
+    }
+
+    /**
+     * Forgets the given file, e.g. because processing it failed.
+     */
+    public void remove(Path file) {
+        entries.remove(toKey(file));
+    }
+
+    /**
+     * Forgets the files which were neither checked nor recorded since the index was loaded, e.g. because they were deleted.
+     * Must only be called after a run over all files, not only the changed ones.
+     *
+     * @return the number of forgotten files
+     */
+    public int pruneUnseen() {
+        int sizeBefore = entries.size();
+        entries.keySet().retainAll(seen);
+        return sizeBefore - entries.size();
+    }
+
+    public void save() throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Path tempFile = Files.createTempFile(indexFile.getParent(), INDEX_FILE_NAME, ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(header);
+            writer.newLine();
+            for (Map.Entry<Path, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                writer.write(entry.outcome() + "\t" + entry.size() + "\t" + entry.lastModified() + "\t" + entry.contentHash() + "\t" + mapEntry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path toKey(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    private static String hash(ByteBuffer content) {
+        MessageDigest digest = sha256();
+        digest.update(content.duplicate());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,366 @@
+package co.elastic.indytransformer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class Main {
+
+    static final String DEFAULT_CACHE_DIR = ".indy-advice-transformer";
+    private static final int SLOWEST_FILES_LIMIT = 10;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path rootDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean prefilter = true;
+        boolean incremental = false;
+        boolean symbolIndex = false;
+        Path cacheDir = null;
+        Path resultCacheDir = null;
+        long resultCacheMaxBytes = ResultCache.DEFAULT_MAX_BYTES;
+        String changedFilesList = null;
+        String gitDiffRange = null;
+        boolean printStats = false;
+        Path statsJson = null;
+        boolean daemon = false;
+        Path socketPath = null;
+        PatchOutput.Format patchFormat = null;
+        String patchFile = null;
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        boolean useGitignore = true;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--threads")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--threads requires a numeric argument");
+                }
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    exitWithUsage("Invalid thread count: " + args[i]);
+                }
+                if (threads < 1) {
+                    exitWithUsage("The thread count must be at least 1");
+                }
+            } else if (arg.equals("--no-prefilter")) {
+                prefilter = false;
+            } else if (arg.equals("--incremental")) {
+                incremental = true;
+            } else if (arg.equals("--symbol-index")) {
+                symbolIndex = true;
+            } else if (arg.equals("--jfr-events")) {
+                TransformerEvents.setEnabled(true);
+            } else if (arg.equals("--cache-dir")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--cache-dir requires a directory argument");
+                }
+                cacheDir = Paths.get(args[++i]);
+            } else if (arg.equals("--result-cache")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--result-cache requires a directory argument");
+                }
+                resultCacheDir = Paths.get(args[++i]);
+            } else if (arg.equals("--result-cache-size")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--result-cache-size requires a numeric argument");
+                }
+                try {
+                    resultCacheMaxBytes = Math.multiplyExact(Long.parseLong(args[++i]), 1024L * 1024);
+                } catch (NumberFormatException | ArithmeticException e) {
+                    exitWithUsage("Invalid result cache size: " + args[i]);
+                }
+                if (resultCacheMaxBytes < 1) {
+                    exitWithUsage("The result cache size must be at least 1 MiB");
+                }
+            } else if (arg.equals("--include") || arg.equals("--exclude")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage(arg+" requires a glob argument");
+                }
+                (arg.equals("--include") ? includes : excludes).add(args[++i]);
+            } else if (arg.equals("--no-gitignore")) {
+                useGitignore = false;
+            } else if (arg.equals("--changed-files")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--changed-files requires a file argument");
+                }
+                changedFilesList = args[++i];
+            } else if (arg.equals("--git-diff")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--git-diff requires a revision range argument");
+                }
+                gitDiffRange = args[++i];
+            } else if (arg.equals("--stats")) {
+                printStats = true;
+            } else if (arg.equals("--stats-json")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--stats-json requires a file argument");
+                }
+                statsJson = Paths.get(args[++i]);
+            } else if (arg.equals("--daemon")) {
+                daemon = true;
+            } else if (arg.equals("--socket")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage("--socket requires a path argument");
+                }
+                daemon = true;
+                socketPath = Paths.get(args[++i]);
+            } else if (arg.equals("--patch") || arg.equals("--edits-json")) {
+                if (i + 1 >= args.length) {
+                    exitWithUsage(arg + " requires a file argument, use - for stdout");
+                }
+                if (patchFormat != null) {
+                    exitWithUsage("Only one of --patch and --edits-json can be used");
+                }
+                patchFormat = arg.equals("--patch") ? PatchOutput.Format.UNIFIED_DIFF : PatchOutput.Format.EDITS_JSON;
+                patchFile = args[++i];
+            } else if (rootDir == null && !arg.startsWith("--")) {
+                rootDir = Paths.get(arg);
+            } else {
+                exitWithUsage("Unexpected argument: " + arg);
+            }
+        }
+        if (daemon) {
+            if (rootDir != null) {
+                exitWithUsage("The daemon mode does not accept a directory to transform");
+            }
+            runDaemon(prefilter, socketPath);
+            return;
+        }
+        if (rootDir == null) {
+            exitWithUsage("The directory to transform is required as program argument");
+        }
+        if (patchFormat != null && incremental) {
+            exitWithUsage("--incremental can't be combined with --patch or --edits-json, because the files are not written");
+        }
+        if (patchFormat != null && resultCacheDir != null) {
+            exitWithUsage("--result-cache can't be combined with --patch or --edits-json, because the files are not written");
+        }
+        if (symbolIndex && resultCacheDir != null) {
+            // the result may depend on the types declared in other files, which are not part of the key
+            exitWithUsage("--result-cache can't be combined with --symbol-index");
+        }
+        boolean archive = ArchiveTransformer.isArchive(rootDir);
+        if (archive && (incremental || symbolIndex || resultCacheDir != null || changedFilesList != null || gitDiffRange != null || patchFormat != null)) {
+            exitWithUsage("--incremental, --symbol-index, --result-cache, --changed-files, --git-diff, --patch and --edits-json can't be used for archives");
+        }
+        // stdout is reserved for the patch if it is written to stdout
+        PrintStream out = "-".equals(patchFile) ? System.err : System.out;
+
+        TransformerStats stats = printStats || statsJson != null ? new TransformerStats(SLOWEST_FILES_LIMIT) : TransformerStats.DISABLED;
+
+        TransformPipeline.FileSource source;
+        String sourceDescription;
+        if (archive) {
+            source = null;
+            sourceDescription = "java source files in archive "+rootDir;
+        } else if (changedFilesList != null) {
+            List<Path> changedFiles = ChangedFiles.fromPathList(rootDir, changedFilesList);
+            source = changedFiles::stream;
+            sourceDescription = "changed java source files in "+changedFilesList;
+        } else if (gitDiffRange != null) {
+            List<Path> changedFiles = ChangedFiles.fromGitDiff(rootDir, gitDiffRange);
+            source = changedFiles::stream;
+            sourceDescription = "java source files changed in "+gitDiffRange;
+        } else {
+            // The tree is walked concurrently with the transformation, so that it starts before all files have been found
+            Path walkRoot = rootDir;
+            int walkThreads = threads;
+            SourceWalker walker = new SourceWalker(includes.isEmpty() ? SourceWalker.DEFAULT_INCLUDES : includes, excludes, useGitignore);
+            source = () -> walker.walk(walkRoot, walkThreads);
+            sourceDescription = "java source files in directory "+rootDir;
+        }
+
+        Path effectiveCacheDir = cacheDir != null ? cacheDir : rootDir.resolve(DEFAULT_CACHE_DIR);
+        IncrementalIndex incrementalIndex = null;
+        // the timings are only kept when the cache directory is used anyway
+        FileCostModel costModel = FileCostModel.create();
+        if (incremental) {
+            // the project types resolved using the symbol index may change the result
+            incrementalIndex = IncrementalIndex.load(effectiveCacheDir, "symbolIndex=" + symbolIndex);
+            costModel = FileCostModel.load(effectiveCacheDir);
+        }
+
+        AdviceTypeSolver typeSolver = AdviceTypeSolver.getShared();
+        if (symbolIndex) {
+            List<Path> indexedFiles = SymbolIndex.findSourceFiles(rootDir, threads);
+            Optional<SymbolIndex> loadedIndex = SymbolIndex.load(effectiveCacheDir);
+            SymbolIndex index;
+            if (loadedIndex.isPresent() && loadedIndex.get().isUpToDate(rootDir, indexedFiles)) {
+                index = loadedIndex.get();
+            } else {
+                index = SymbolIndex.build(rootDir, indexedFiles, threads);
+                index.save(effectiveCacheDir);
+                out.println("Indexed "+index.size()+" types declared in directory "+rootDir);
+            }
+            typeSolver = new AdviceTypeSolver(AdviceTypeSolver.configuredCacheSize(), new ProjectTypeSolver(index, rootDir));
+        }
+
+        // the prefilter and the file selection don't affect the result of a file, so no options are part of the key yet
+        ResultCache resultCache = resultCacheDir != null ? new ResultCache(resultCacheDir, resultCacheMaxBytes, "") : null;
+        PatchOutput patchOutput = patchFormat != null ? new PatchOutput(patchFormat, rootDir) : null;
+        long found;
+        ResultSummary summary;
+        try (OutputStream patchOut = openPatchOutput(patchFile)) {
+            summary = new ResultSummary(rootDir, stats, out, patchOut);
+            if (archive) {
+                // the entries are transformed one after the other, because the new archive is written sequentially anyway
+                found = new ArchiveTransformer(new AdviceTransformer(typeSolver, stats), prefilter, stats).transform(rootDir, summary);
+            } else {
+                found = new TransformPipeline(threads, prefilter, incrementalIndex, stats, patchOutput, typeSolver, costModel, resultCache).run(source, summary);
+            }
+        }
+        out.println("Found "+found+" "+sourceDescription);
+
+        if (incrementalIndex != null) {
+            if (changedFilesList == null && gitDiffRange == null) {
+                // all files have been seen, the others were deleted
+                incrementalIndex.pruneUnseen();
+            }
+            incrementalIndex.save();
+            costModel.save();
+            out.println("Skipped "+summary.upToDate+" java source files which did not change since the last run");
+        }
+        if (resultCache != null) {
+            int evicted = resultCache.trim();
+            if (evicted > 0) {
+                out.println("Evicted "+evicted+" entries from the result cache "+resultCacheDir);
+            }
+        }
+
+        if (prefilter) {
+            String savings = "";
+            if (summary.parsedBytes > 0) {
+                // Assume that the skipped files would have taken as long per byte as the ones we actually parsed
+                long estimatedParseNanos = (long) ((double) summary.parsedNanos / summary.parsedBytes * summary.skippedBytes);
+                savings = ", saving an estimated " + TimeUnit.NANOSECONDS.toMillis(estimatedParseNanos - summary.skippedNanos) + " ms";
+            }
+            out.println("Skipped "+summary.skipped+" java source files without advice annotations"+savings);
+        }
+        if (patchFile != null) {
+            out.println("Wrote the changes of "+summary.transformed+" java source files to "+("-".equals(patchFile) ? "stdout" : patchFile));
+        } else {
+            out.println("Successfully transformed "+summary.transformed+" java source files");
+        }
+
+        if (printStats) {
+            stats.printSummary(out);
+        }
+        if (statsJson != null) {
+            stats.writeJson(statsJson);
+            out.println("Wrote statistics to "+statsJson);
+        }
+    }
+
+    /**
+     * The patches are written as bytes, because the lines of each file are encoded in the charset of the file.
+     */
+    private static OutputStream openPatchOutput(String patchFile) throws IOException {
+        if (patchFile == null) {
+            return null;
+        } else if (patchFile.equals("-")) {
+            // not closing stdout
+            return new BufferedOutputStream(System.out) {
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+        return new BufferedOutputStream(Files.newOutputStream(Paths.get(patchFile)));
+    }
+
+    private static void runDaemon(boolean prefilter, Path socketPath) throws IOException {
+        Daemon daemon = new Daemon(prefilter);
+        daemon.warmUp();
+        // stdout is reserved for the protocol in stdio mode
+        if (socketPath != null) {
+            System.err.println("Listening for transformation requests on "+socketPath);
+            daemon.serveSocket(socketPath);
+        } else {
+            System.err.println("Listening for transformation requests on stdin");
+            daemon.serveStdio();
+        }
+    }
+
+    /**
+     * Reports the results of the individual files and sums them up. Rendered patches are written in the order of the results.
+     */
+    private static class ResultSummary implements Consumer<TransformPipeline.FileResult> {
+        private final Path rootDir;
+        private final TransformerStats stats;
+        private final PrintStream out;
+        private final OutputStream patchOut;
+        private int transformed = 0;
+        private int skipped = 0;
+        private int upToDate = 0;
+        private long skippedBytes = 0;
+        private long skippedNanos = 0;
+        private long parsedBytes = 0;
+        private long parsedNanos = 0;
+
+        private ResultSummary(Path rootDir, TransformerStats stats, PrintStream out, OutputStream patchOut) {
+            this.rootDir = rootDir;
+            this.stats = stats;
+            this.out = out;
+            this.patchOut = patchOut;
+        }
+
+        @Override
+        public void accept(TransformPipeline.FileResult result) {
+            String relativePath = rootDir.relativize(result.file()).toString();
+            stats.increment(TransformerStats.Counter.FILES_SCANNED);
+            if (result.failure() != null) {
+                stats.increment(TransformerStats.Counter.FILES_FAILED);
+                out.println("Failed to transform "+relativePath);
+                result.failure().printStackTrace();
+                return;
+            }
+            if (result.outcome() == TransformOutcome.UP_TO_DATE) {
+                upToDate++;
+                stats.increment(TransformerStats.Counter.FILES_UP_TO_DATE);
+            } else if (result.outcome() == TransformOutcome.NO_ADVICE) {
+                skipped++;
+                stats.increment(TransformerStats.Counter.FILES_WITHOUT_ADVICE);
+                skippedBytes += result.size();
+                skippedNanos += result.nanos();
+            } else {
+                parsedBytes += result.size();
+                parsedNanos += result.nanos();
+            }
+            if (result.outcome() == TransformOutcome.TRANSFORMED) {
+                transformed++;
+                stats.increment(TransformerStats.Counter.FILES_TRANSFORMED);
+                out.println("Transformed Advice class(es) in "+relativePath);
+                if (patchOut != null) {
+                    try {
+                        patchOut.write(result.patch());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to write the patch", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void exitWithUsage(String message) {
+        System.out.println(message);
+        System.out.println("Usage: <dir-or-archive-to-transform> [--threads <count>] [--no-prefilter] [--incremental] [--symbol-index] [--cache-dir <dir>]"
+                + " [--result-cache <dir>] [--result-cache-size <MiB>]"
+                + " [--include <glob>]... [--exclude <glob>]... [--no-gitignore]"
+                + " [--stats] [--stats-json <file>] [--jfr-events] [--changed-files <file> | --git-diff <revision-range>]"
+                + " [--patch <file> | --edits-json <file>]");
+        System.out.println("       --daemon | --socket <path> [--no-prefilter]");
+        System.exit(-1);
+    }
+}
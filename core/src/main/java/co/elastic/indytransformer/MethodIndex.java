@@ -0,0 +1,304 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithSimpleName;
+import com.github.javaparser.ast.observer.ObservableProperty;
+import com.github.javaparser.ast.observer.PropagatingAstObserver;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.metamodel.PropertyMetaModel;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.javaparsermodel.declarations.JavaParserParameterDeclaration;
+import com.github.javaparser.symbolsolver.javaparsermodel.declarations.JavaParserVariableDeclaration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indexes the variable references and the return statements of an advice method.
+ * <p>
+ * The index is built with a single walk over the method and afterwards kept up to date by observing all changes
+ * to the method's AST. This avoids walking the method body and invoking the symbol solver for every variable which is
+ * replaced or checked for usages during the transformation.
+ * <p>
+ * References to parameters of the method and to variables declared by top-level statements of the method body are
+ * resolved lexically: such a variable is in scope from its declaration to the end of the body, where Java doesn't allow
+ * local variables or lambda parameters to shadow it. So a name expression in a later top-level statement refers to it,
+ * while one in an earlier statement refers to something else, e.g. a field or a variable of a preceding block.
+ * Only references within the declaring statement itself, from nested class bodies and from outside the method body
+ * are resolved using the symbol solver.
+ */
+public class MethodIndex {
+
+    private static final DataKey<MethodIndex> INDEX_KEY = new DataKey<>() {
+    };
+    /**
+     * The position of nodes which are not within the method body or are within the body of a nested class.
+     */
+    private static final int OUTSIDE_BODY_SCOPE = Integer.MIN_VALUE;
+    /**
+     * The position of the parameters of the method, which precedes all statements of the body.
+     */
+    private static final int PARAMETER_POSITION = -1;
+
+    private final MethodDeclaration method;
+    private final TypeSolver typeSolver;
+    private final Map<String, List<NameExpr>> namesByIdentifier = new HashMap<>();
+    private final Set<NameExpr> indexedNames = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * All return statements in the method body, including the ones of lambdas and nested classes.
+     */
+    private final List<ReturnStmt> returns = new ArrayList<>();
+    private final PropagatingAstObserver observer = new PropagatingAstObserver() {
+        @Override
+        public void concretePropertyChange(Node observedNode, ObservableProperty property, Object oldValue, Object newValue) {
+            if (observedNode instanceof NameExpr nameExpr && property == ObservableProperty.NAME) {
+                removeName(((SimpleName) oldValue).getIdentifier(), nameExpr);
+                if (isAttached(nameExpr)) {
+                    addName(nameExpr);
+                }
+                return;
+            }
+            removed(oldValue);
+            if (isAttached(observedNode)) {
+                added(newValue);
+            }
+        }
+
+        @Override
+        public void concreteListChange(NodeList<?> observedNode, ListChangeType type, int index, Node nodeAddedOrRemoved) {
+            if (type == ListChangeType.REMOVAL) {
+                removed(nodeAddedOrRemoved);
+            } else if (observedNode.getParentNode().filter(MethodIndex.this::isAttached).isPresent()) {
+                added(nodeAddedOrRemoved);
+            }
+        }
+
+        @Override
+        public void concreteListReplacement(NodeList<?> observedNode, int index, Node oldValue, Node newValue) {
+            removed(oldValue);
+            if (observedNode.getParentNode().filter(MethodIndex.this::isAttached).isPresent()) {
+                added(newValue);
+            }
+        }
+    };
+
+    private MethodIndex(MethodDeclaration method, TypeSolver typeSolver) {
+        this.method = method;
+        this.typeSolver = typeSolver;
+        method.walk(NameExpr.class, this::addName);
+        method.getBody().ifPresent(body -> body.walk(ReturnStmt.class, returns::add));
+        method.registerForSubtree(observer);
+    }
+
+    /**
+     * @return the index of the given method, which is created on first access
+     */
+    public static MethodIndex of(MethodDeclaration method, TypeSolver typeSolver) {
+        if (method.containsData(INDEX_KEY)) {
+            return method.getData(INDEX_KEY);
+        }
+        MethodIndex index = new MethodIndex(method, typeSolver);
+        method.setData(INDEX_KEY, index);
+        return index;
+    }
+
+    /**
+     * Stops tracking changes of the given method, if it has been indexed.
+     */
+    public static void discard(MethodDeclaration method) {
+        if (method != null && method.containsData(INDEX_KEY)) {
+            PropagatingAstObserver observer = method.getData(INDEX_KEY).observer;
+            method.walk(node -> {
+                node.unregister(observer);
+                for (PropertyMetaModel property : node.getMetaModel().getAllPropertyMetaModels()) {
+                    if (property.isNodeList() && property.getValue(node) instanceof NodeList<?> list) {
+                        list.unregister(observer);
+                    }
+                }
+            });
+            method.removeData(INDEX_KEY);
+        }
+    }
+
+    /**
+     * @return the return statements which belong to the method itself and not to a lambda, anonymous class or local class,
+     * in the order in which they were added to the index
+     */
+    public List<ReturnStmt> getReturns() {
+        return returns.stream().filter(this::isScopedReturn).toList();
+    }
+
+    /**
+     * @param declaration a {@link Parameter} or {@link VariableDeclarator}
+     * @return true, if the declared variable is read anywhere in the method
+     */
+    public boolean isUsed(Node declaration) {
+        String name = ((NodeWithSimpleName<?>) declaration).getNameAsString();
+        for (NameExpr nameExpr : namesByIdentifier.getOrDefault(name, List.of())) {
+            if (!Utils.isLHSOfAssignment(nameExpr) && refersTo(nameExpr, declaration)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces all references to the given parameter with copies of the given expression.
+     */
+    public void replaceReferences(Parameter parameter, Expression replacement) {
+        List<NameExpr> candidates = new ArrayList<>(namesByIdentifier.getOrDefault(parameter.getNameAsString(), List.of()));
+        for (NameExpr nameExpr : candidates) {
+            if (refersTo(nameExpr, parameter) && !nameExpr.replace(replacement.clone())) {
+                throw new IllegalStateException("Failed to replace " + nameExpr);
+            }
+        }
+    }
+
+    private boolean refersTo(NameExpr nameExpr, Node declaration) {
+        int declaredAt = declarationPosition(declaration);
+        int usedAt = declaredAt != OUTSIDE_BODY_SCOPE ? statementPosition(nameExpr) : OUTSIDE_BODY_SCOPE;
+        if (usedAt != OUTSIDE_BODY_SCOPE && usedAt != declaredAt) {
+            // the variable can't be shadowed after its declaration and is not in scope before it
+            return usedAt > declaredAt;
+        }
+        SymbolReference<? extends ResolvedValueDeclaration> result = JavaParserFacade.get(typeSolver).solve(nameExpr);
+        if (result.isSolved()) {
+            ResolvedValueDeclaration correspondingDeclaration = result.getCorrespondingDeclaration();
+            if (correspondingDeclaration instanceof JavaParserParameterDeclaration paramDecl) {
+                return paramDecl.getWrappedNode() == declaration;
+            } else if (correspondingDeclaration instanceof JavaParserVariableDeclaration varDecl) {
+                return varDecl.getWrappedNode().getVariable(0) == declaration;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@link #PARAMETER_POSITION} for a parameter of the method, the index of the declaring statement for a
+     * variable declared by a top-level statement of its body, otherwise {@link #OUTSIDE_BODY_SCOPE}
+     */
+    private int declarationPosition(Node declaration) {
+        Node parent = declaration.getParentNode().orElse(null);
+        if (declaration instanceof Parameter) {
+            return parent == method ? PARAMETER_POSITION : OUTSIDE_BODY_SCOPE;
+        }
+        if (declaration instanceof VariableDeclarator
+            && parent instanceof VariableDeclarationExpr
+            && parent.getParentNode().orElse(null) instanceof ExpressionStmt statement
+            && statement.getParentNode().orElse(null) == method.getBody().orElse(null)) {
+            return statementPosition(statement);
+        }
+        return OUTSIDE_BODY_SCOPE;
+    }
+
+    /**
+     * @return the index of the top-level statement of the method body containing the given node or {@link #OUTSIDE_BODY_SCOPE},
+     * if the node is not in the method body or within the body of a nested class
+     */
+    private int statementPosition(Node node) {
+        BlockStmt body = method.getBody().orElse(null);
+        Node child = node;
+        for (Node current = node.getParentNode().orElse(null); current != null; current = current.getParentNode().orElse(null)) {
+            if (current == body) {
+                NodeList<Statement> statements = body.getStatements();
+                for (int i = 0; i < statements.size(); i++) {
+                    // compared by identity, because equals compares the structure
+                    if (statements.get(i) == child) {
+                        return i;
+                    }
+                }
+                return OUTSIDE_BODY_SCOPE;
+            }
+            if (current instanceof BodyDeclaration) {
+                return OUTSIDE_BODY_SCOPE;
+            }
+            child = current;
+        }
+        return OUTSIDE_BODY_SCOPE;
+    }
+
+    private boolean isAttached(Node node) {
+        for (Node current = node; current != null; current = current.getParentNode().orElse(null)) {
+            if (current == method) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void added(Object value) {
+        if (value instanceof Node node) {
+            node.walk(NameExpr.class, this::addName);
+            node.walk(ReturnStmt.class, this::addReturn);
+        } else if (value instanceof NodeList<?> list) {
+            for (Node node : list) {
+                node.registerForSubtree(observer);
+                added(node);
+            }
+        }
+    }
+
+    private void removed(Object value) {
+        if (value instanceof Node node) {
+            node.walk(NameExpr.class, nameExpr -> removeName(nameExpr.getNameAsString(), nameExpr));
+            node.walk(ReturnStmt.class, returnStmt -> returns.removeIf(existing -> existing == returnStmt));
+        } else if (value instanceof NodeList<?> list) {
+            list.forEach(this::removed);
+        }
+    }
+
+    private void addName(NameExpr nameExpr) {
+        if (indexedNames.add(nameExpr)) {
+            namesByIdentifier.computeIfAbsent(nameExpr.getNameAsString(), key -> new ArrayList<>()).add(nameExpr);
+        }
+    }
+
+    private void removeName(String identifier, NameExpr nameExpr) {
+        if (indexedNames.remove(nameExpr)) {
+            namesByIdentifier.get(identifier).removeIf(existing -> existing == nameExpr);
+        }
+    }
+
+    private void addReturn(ReturnStmt returnStmt) {
+        for (ReturnStmt existing : returns) {
+            if (existing == returnStmt) {
+                return;
+            }
+        }
+        returns.add(returnStmt);
+    }
+
+    private boolean isScopedReturn(ReturnStmt returnStmt) {
+        BlockStmt body = method.getBody().orElse(null);
+        for (Node current = returnStmt.getParentNode().orElse(null); current != body; current = current.getParentNode().orElse(null)) {
+            if (current == null || current instanceof ClassOrInterfaceDeclaration || current instanceof ObjectCreationExpr || current instanceof LambdaExpr) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
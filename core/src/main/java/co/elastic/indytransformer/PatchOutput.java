@@ -0,0 +1,204 @@
+package co.elastic.indytransformer;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.Chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders the changes to a file as text instead of writing the transformed file, so that they can be reviewed and applied later.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ *     <li>{@link Format#UNIFIED_DIFF}: a git style unified diff, which can be applied using {@code git apply}. The lines
+ *     of each file are encoded in the charset of the file and the byte order mark is kept, so that the context lines
+ *     match the bytes of the file. UTF-16 encoded files are rejected, because git can't apply text patches to them.</li>
+ *     <li>{@link Format#EDITS_JSON}: one JSON object per line and file, listing the text replacements for the file:
+ *     {@code {"path": "a/B.java", "edits": [{"offset": 120, "length": 40, "text": "..."}]}}.
+ *     Offsets and lengths refer to the original file content decoded to UTF-16 code units, excluding a byte order mark.</li>
+ * </ul>
+ * Paths are rendered relative to the base directory, using {@code /} as separator. Instances are thread safe.
+ */
+public class PatchOutput {
+
+    private static final int CONTEXT_LINES = 3;
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+    public enum Format {
+        UNIFIED_DIFF,
+        EDITS_JSON
+    }
+
+    private final Format format;
+    private final Path baseDir;
+
+    public PatchOutput(Format format, Path baseDir) {
+        this.format = format;
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * Renders the changes of a UTF-8 encoded file without byte order mark.
+     *
+     * @return the rendered changes of the given file, ending with a newline
+     */
+    public String render(Path file, String original, String transformed) {
+        return new String(render(file, original, transformed, StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param transformed the transformed text of the source, without byte order mark
+     * @return the rendered changes of the given file, ending with a newline
+     * @throws IOException if the changes of the file can't be rendered in this format
+     */
+    public byte[] render(Path file, SourceFile source, String transformed) throws IOException {
+        if (format == Format.EDITS_JSON) {
+            // the offsets refer to the decoded text, which excludes the byte order mark
+            return render(file, source.text(), transformed, StandardCharsets.UTF_8);
+        }
+        Charset charset = source.charset();
+        if (charset.equals(StandardCharsets.UTF_16BE) || charset.equals(StandardCharsets.UTF_16LE)) {
+            throw new IOException("Can't render a patch for the UTF-16 encoded file " + file + ", because git can't apply it");
+        }
+        // the byte order mark is part of the first line of the file, which the context lines have to match
+        String bom = source.hasByteOrderMark() ? BYTE_ORDER_MARK : "";
+        return render(file, bom + source.text(), bom + transformed, charset);
+    }
+
+    private byte[] render(Path file, String original, String transformed, Charset charset) {
+        String path = baseDir.relativize(file).toString().replace(File.separatorChar, '/');
+        List<String> originalLines = splitLines(original);
+        List<String> transformedLines = splitLines(transformed);
+        List<AbstractDelta<String>> deltas = DiffUtils.diff(originalLines, transformedLines).getDeltas();
+        return switch (format) {
+            case UNIFIED_DIFF -> renderUnifiedDiff(path, originalLines, deltas, charset);
+            case EDITS_JSON -> renderEdits(path, originalLines, deltas).getBytes(StandardCharsets.UTF_8);
+        };
+    }
+
+    /**
+     * The header lines are encoded as UTF-8 like git does, the lines of the file using its charset.
+     */
+    private static byte[] renderUnifiedDiff(String path, List<String> originalLines, List<AbstractDelta<String>> deltas, Charset charset) {
+        DiffBuilder diff = new DiffBuilder(charset);
+        diff.header("diff --git a/" + path + " b/" + path);
+        diff.header("--- a/" + path);
+        diff.header("+++ b/" + path);
+        int first = 0;
+        while (first < deltas.size()) {
+            // deltas whose context lines would overlap are combined into a single hunk
+            int last = first;
+            while (last + 1 < deltas.size()
+                   && deltas.get(last + 1).getSource().getPosition() - end(deltas.get(last).getSource()) <= 2 * CONTEXT_LINES) {
+                last++;
+            }
+            Chunk<String> firstSource = deltas.get(first).getSource();
+            Chunk<String> lastSource = deltas.get(last).getSource();
+            int sourceStart = Math.max(0, firstSource.getPosition() - CONTEXT_LINES);
+            int sourceEnd = Math.min(originalLines.size(), end(lastSource) + CONTEXT_LINES);
+            int targetStart = deltas.get(first).getTarget().getPosition() - (firstSource.getPosition() - sourceStart);
+            int targetEnd = end(deltas.get(last).getTarget()) + (sourceEnd - end(lastSource));
+            diff.header("@@ -" + hunkRange(sourceStart, sourceEnd - sourceStart)
+                        + " +" + hunkRange(targetStart, targetEnd - targetStart) + " @@");
+
+            int position = sourceStart;
+            for (int i = first; i <= last; i++) {
+                AbstractDelta<String> delta = deltas.get(i);
+                for (; position < delta.getSource().getPosition(); position++) {
+                    diff.line(' ', originalLines.get(position));
+                }
+                delta.getSource().getLines().forEach(line -> diff.line('-', line));
+                delta.getTarget().getLines().forEach(line -> diff.line('+', line));
+                position = end(delta.getSource());
+            }
+            for (; position < sourceEnd; position++) {
+                diff.line(' ', originalLines.get(position));
+            }
+            first = last + 1;
+        }
+        return diff.toByteArray();
+    }
+
+    private static String renderEdits(String path, List<String> originalLines, List<AbstractDelta<String>> deltas) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"path\": ").append(Json.quote(path)).append(", \"edits\": [");
+        int line = 0;
+        int offset = 0;
+        for (int i = 0; i < deltas.size(); i++) {
+            Chunk<String> source = deltas.get(i).getSource();
+            for (; line < source.getPosition(); line++) {
+                offset += originalLines.get(line).length();
+            }
+            int length = 0;
+            for (String removed : source.getLines()) {
+                length += removed.length();
+            }
+            json.append(i == 0 ? "" : ", ")
+                    .append("{\"offset\": ").append(offset)
+                    .append(", \"length\": ").append(length)
+                    .append(", \"text\": ").append(Json.quote(String.join("", deltas.get(i).getTarget().getLines())))
+                    .append('}');
+        }
+        json.append("]}\n");
+        return json.toString();
+    }
+
+    /**
+     * Splits the given text into lines after each {@code \n} like git does, keeping the line separators,
+     * so that a missing newline at the end of the file and changed line separators show up as changes.
+     */
+    static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int end = text.indexOf('\n'); end != -1; end = text.indexOf('\n', start)) {
+            lines.add(text.substring(start, end + 1));
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    private static final class DiffBuilder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final Charset charset;
+
+        private DiffBuilder(Charset charset) {
+            this.charset = charset;
+        }
+
+        void header(String line) {
+            bytes.writeBytes((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        void line(char prefix, String line) {
+            bytes.write(prefix);
+            bytes.writeBytes(line.getBytes(charset));
+            if (!line.endsWith("\n")) {
+                header("\n\\ No newline at end of file");
+            }
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    private static String hunkRange(int start, int count) {
+        // an empty range refers to the line before it
+        return count == 0 ? start + ",0" : (start + 1) + "," + count;
+    }
+
+    private static int end(Chunk<String> chunk) {
+        return chunk.getPosition() + chunk.size();
+    }
+}
@@ -0,0 +1,105 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Resolves the types declared by the sources of the project, e.g. helper classes used as advice parameter types,
+ * using a {@link SymbolIndex}. Lookups of names which are not declared by the project only cost a binary search in the index,
+ * the declaring source files are only parsed when a type is found.
+ * <p>
+ * Resolving types stores data in the AST nodes of the declaring file, which is not thread safe. Therefore the parsed files
+ * are cached per thread, in a bounded cache evicting the least recently used files.
+ */
+public class ProjectTypeSolver implements TypeSolver {
+
+    private static final int PARSED_FILES_PER_THREAD = 256;
+
+    private final SymbolIndex index;
+    private final Path rootDir;
+    private final ThreadLocal<JavaParser> parsers;
+    private final ThreadLocal<Cache<String, Optional<CompilationUnit>>> parsedFiles;
+    private volatile TypeSolver parent;
+
+    /**
+     * @param rootDir the directory the index has been built for
+     */
+    public ProjectTypeSolver(SymbolIndex index, Path rootDir) {
+        this.index = index;
+        this.rootDir = rootDir;
+        parsers = ThreadLocal.withInitial(() -> new JavaParser(new ParserConfiguration()
+                .setSymbolResolver(new JavaSymbolSolver(getRoot()))));
+        parsedFiles = ThreadLocal.withInitial(() -> CacheBuilder.newBuilder()
+                .maximumSize(PARSED_FILES_PER_THREAD)
+                .build());
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        Optional<String> sourceFile = index.findSourceFile(name);
+        if (sourceFile.isEmpty()) {
+            return SymbolReference.unsolved();
+        }
+        Optional<TypeDeclaration<?>> declaration = parse(sourceFile.get())
+                .flatMap(compilationUnit -> compilationUnit.findFirst(TypeDeclaration.class,
+                        type -> type.getFullyQualifiedName().filter(name::equals).isPresent()))
+                .map(type -> (TypeDeclaration<?>) type);
+        if (declaration.isEmpty()) {
+            // the file has been changed or removed since the index has been built
+            return SymbolReference.unsolved();
+        }
+        return SymbolReference.solved(JavaParserFacade.get(getRoot()).getTypeDeclaration(declaration.get()));
+    }
+
+    private Optional<CompilationUnit> parse(String sourceFile) {
+        try {
+            return parsedFiles.get().get(sourceFile, () -> {
+                Path file = rootDir.resolve(sourceFile);
+                if (!Files.isRegularFile(file)) {
+                    return Optional.empty();
+                }
+                ParseResult<CompilationUnit> result = parsers.get().parse(SourceFile.of(Files.readAllBytes(file)).text());
+                return result.getResult();
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                return Optional.empty();
+            }
+            throw new IllegalStateException("Failed to parse " + sourceFile, e.getCause());
+        }
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        Objects.requireNonNull(parent);
+        if (this.parent != null) {
+            throw new IllegalStateException("This TypeSolver already has a parent.");
+        }
+        if (parent == this) {
+            throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+        }
+        this.parent = parent;
+    }
+}
@@ -0,0 +1,268 @@
+package co.elastic.indytransformer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Remembers the transformation results by the content of the source files, so that identical files are only transformed once,
+ * even across checkouts and machines sharing the cache directory, e.g. via a mounted volume.
+ * <p>
+ * The key of an entry is the SHA-256 hash of the tool version, the options affecting the output and the content of
+ * the file. An entry stores either the transformed content or a marker that the transformation did not change the file.
+ * The transformed content is preceded by its length and SHA-256 hash, so that truncated or otherwise corrupt entries,
+ * e.g. partially copied to a shared volume, are detected. They are treated as a cache miss and deleted.
+ * Entries are written to a temporary file first and moved into place atomically, so that concurrent writers of the
+ * same entry don't corrupt it.
+ * <p>
+ * The modification time of an entry is updated when it is used. {@link #trim()} evicts the least recently used
+ * entries once the cache exceeds its maximum size.
+ * <p>
+ * The cache is an optimization only: failures to read or write entries are ignored and the file is transformed instead.
+ * Instances are thread safe.
+ */
+public class ResultCache {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final byte UNCHANGED = 'U';
+    private static final byte TRANSFORMED = 'T';
+    /**
+     * The marker, the length of the output and its SHA-256 hash.
+     */
+    private static final int TRANSFORMED_HEADER_SIZE = 1 + Integer.BYTES + 32;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    /**
+     * Temporary files older than this were left behind by a writer which did not finish.
+     */
+    private static final long STALE_TEMP_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Trimming removes entries until this fraction of the maximum size is used, so that not every run has to trim again.
+     */
+    private static final double TRIM_TARGET_RATIO = 0.9;
+
+    private static final String TOOL_VERSION = loadToolVersion();
+
+    /**
+     * @param output the transformed content or {@code null} if the transformation did not change the file
+     */
+    public record Result(byte[] output) {
+        public boolean changed() {
+            return output != null;
+        }
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final byte[] keyPrefix;
+
+    /**
+     * @param options describes the options which affect the transformation result, entries are only shared between equal options
+     */
+    public ResultCache(Path directory, long maxBytes, String options) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.keyPrefix = (TOOL_VERSION + "\0" + options + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the version of the transformer, including the build time for snapshot versions
+     */
+    public static String toolVersion() {
+        return TOOL_VERSION;
+    }
+
+    private static String loadToolVersion() {
+        Properties properties = new Properties();
+        try (InputStream input = ResultCache.class.getResourceAsStream("version.properties")) {
+            if (input != null) {
+                properties.load(input);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String version = properties.getProperty("version", "unknown");
+        if (version.endsWith("-SNAPSHOT") || version.equals("unknown")) {
+            // the code of snapshots changes without changing the version
+            version += "+" + properties.getProperty("build", "unknown");
+        }
+        return version;
+    }
+
+    public String key(ByteBuffer content) {
+        MessageDigest digest = sha256();
+        digest.update(keyPrefix);
+        digest.update(content.duplicate());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the cached result or empty if there is none
+     */
+    public Optional<Result> get(String key) {
+        Path entry = entryPath(key);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(entry);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        if (!isValid(data)) {
+            deleteQuietly(entry);
+            return Optional.empty();
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // e.g. a read-only cache, the entry is still valid
+        }
+        if (data[0] == UNCHANGED) {
+            return Optional.of(new Result(null));
+        }
+        return Optional.of(new Result(Arrays.copyOfRange(data, TRANSFORMED_HEADER_SIZE, data.length)));
+    }
+
+    private static boolean isValid(byte[] data) {
+        if (data.length == 1) {
+            return data[0] == UNCHANGED;
+        }
+        if (data.length < TRANSFORMED_HEADER_SIZE || data[0] != TRANSFORMED) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data);
+        if (header.getInt(1) != data.length - TRANSFORMED_HEADER_SIZE) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        digest.update(data, TRANSFORMED_HEADER_SIZE, data.length - TRANSFORMED_HEADER_SIZE);
+        return Arrays.equals(digest.digest(), 0, 32, data, 1 + Integer.BYTES, TRANSFORMED_HEADER_SIZE);
+    }
+
+    public void put(String key, Result result) {
+        Path entry = entryPath(key);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            // unlike createTempFile, which restricts the file to its owner, this applies the umask, so that other users
+            // sharing the cache can read the entry
+            tempFile = entry.resolveSibling(key + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_FILE_SUFFIX);
+            byte[] data;
+            if (result.changed()) {
+                byte[] output = result.output();
+                data = ByteBuffer.allocate(TRANSFORMED_HEADER_SIZE + output.length)
+                        .put(TRANSFORMED)
+                        .putInt(output.length)
+                        .put(sha256().digest(output))
+                        .put(output)
+                        .array();
+            } else {
+                data = new byte[]{UNCHANGED};
+            }
+            try (OutputStream output = Files.newOutputStream(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                output.write(data);
+            }
+            Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries if the cache is larger than its maximum size.
+     *
+     * @return the number of evicted entries
+     */
+    public int trim() throws IOException {
+        record CachedFile(Path file, long size, long lastModified) {
+        }
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        List<CachedFile> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long totalBytes = 0;
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // removed concurrently
+                    continue;
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                if (file.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)) {
+                    if (now - lastModified > STALE_TEMP_FILE_MILLIS) {
+                        deleteQuietly(file);
+                    }
+                    continue;
+                }
+                entries.add(new CachedFile(file, attributes.size(), lastModified));
+                totalBytes += attributes.size();
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return 0;
+        }
+        entries.sort(Comparator.comparingLong(CachedFile::lastModified));
+        long targetBytes = (long) (maxBytes * TRIM_TARGET_RATIO);
+        int evicted = 0;
+        for (CachedFile entry : entries) {
+            if (totalBytes <= targetBytes) {
+                break;
+            }
+            deleteQuietly(entry.file());
+            totalBytes -= entry.size();
+            evicted++;
+        }
+        return evicted;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // another process may be cleaning up concurrently
+        }
+    }
+}
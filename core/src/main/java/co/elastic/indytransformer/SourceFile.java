@@ -0,0 +1,177 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.utils.LineSeparator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * The raw content of a source file together with the encoding details required to write it back unchanged,
+ * apart from the transformed code.
+ * <p>
+ * The charset is detected from the byte order mark. Files without one are decoded as UTF-8, or as ISO-8859-1 if they
+ * are not valid UTF-8: every byte is a valid ISO-8859-1 character, so that legacy encoded comments and literals
+ * survive the round trip unchanged. If the file consistently uses a single line separator, new lines inserted by the
+ * transformation are converted to it.
+ * <p>
+ * Files are read into a buffer which is reused by the next {@link #read(Path, Buffer)} call, so that files which are
+ * skipped by the {@link AdvicePrefilter} don't cause any allocations. Use {@link #detach()} to keep the content.
+ */
+public final class SourceFile {
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] UTF16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+    private static final Pattern LINE_SEPARATOR = Pattern.compile("\r\n|\r|\n");
+
+    /**
+     * A growable read buffer, must not be shared between threads.
+     */
+    public static final class Buffer {
+        private byte[] bytes = new byte[64 * 1024];
+    }
+
+    private final byte[] bytes;
+    private final int length;
+    private final byte[] bom;
+    /**
+     * Only known upfront if there is a byte order mark, otherwise detected while decoding.
+     */
+    private Charset charset;
+    private String text;
+
+    private SourceFile(byte[] bytes, int length) {
+        this.bytes = bytes;
+        this.length = length;
+        if (startsWith(UTF8_BOM)) {
+            bom = UTF8_BOM;
+            charset = StandardCharsets.UTF_8;
+        } else if (startsWith(UTF16BE_BOM)) {
+            bom = UTF16BE_BOM;
+            charset = StandardCharsets.UTF_16BE;
+        } else if (startsWith(UTF16LE_BOM)) {
+            bom = UTF16LE_BOM;
+            charset = StandardCharsets.UTF_16LE;
+        } else {
+            bom = new byte[0];
+        }
+    }
+
+    public static SourceFile of(byte[] content) {
+        return new SourceFile(content, content.length);
+    }
+
+    /**
+     * Reads the given file with a single read into the given buffer. The returned instance is only valid until the buffer is reused.
+     */
+    public static SourceFile read(Path file, Buffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File too large: " + file);
+            }
+            if (buffer.bytes.length < size) {
+                buffer.bytes = new byte[Math.max((int) size, buffer.bytes.length * 2)];
+            }
+            ByteBuffer target = ByteBuffer.wrap(buffer.bytes, 0, (int) size);
+            while (target.hasRemaining() && channel.read(target) != -1) {
+                // the file may shrink while being read, in which case only the remaining content is used
+            }
+            return new SourceFile(buffer.bytes, target.position());
+        }
+    }
+
+    /**
+     * @return a copy of this file which doesn't share the read buffer
+     */
+    public SourceFile detach() {
+        return new SourceFile(Arrays.copyOf(bytes, length), length);
+    }
+
+    /**
+     * @return the raw content, including the byte order mark
+     */
+    public ByteBuffer content() {
+        return ByteBuffer.wrap(bytes, 0, length).asReadOnlyBuffer();
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public boolean hasByteOrderMark() {
+        return bom.length > 0;
+    }
+
+    public Charset charset() {
+        text();
+        return charset;
+    }
+
+    /**
+     * @return the decoded content, without the byte order mark
+     */
+    public String text() {
+        if (text == null) {
+            if (charset != null) {
+                text = new String(bytes, bom.length, length - bom.length, charset);
+            } else {
+                try {
+                    text = StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPORT)
+                            .onUnmappableCharacter(CodingErrorAction.REPORT)
+                            .decode(ByteBuffer.wrap(bytes, 0, length))
+                            .toString();
+                    charset = StandardCharsets.UTF_8;
+                } catch (CharacterCodingException e) {
+                    text = new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+                    charset = StandardCharsets.ISO_8859_1;
+                }
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Encodes the given transformed text like the original content: with the same charset, the same byte order mark
+     * and, if the original used a single line separator consistently, with that separator.
+     *
+     * @return the encoded text or empty, if it is identical to the original content
+     */
+    public Optional<byte[]> encodeIfChanged(String transformed) {
+        byte[] encoded = normalizeLineSeparators(transformed).getBytes(charset());
+        byte[] result = new byte[bom.length + encoded.length];
+        System.arraycopy(bom, 0, result, 0, bom.length);
+        System.arraycopy(encoded, 0, result, bom.length, encoded.length);
+        if (Arrays.equals(result, 0, result.length, bytes, 0, length)) {
+            return Optional.empty();
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * @return the given text with all line separators replaced by the one of the original content,
+     * unless the original content doesn't use a single line separator consistently
+     */
+    public String normalizeLineSeparators(String transformed) {
+        LineSeparator separator = LineSeparator.detect(text());
+        if (separator == LineSeparator.CRLF || separator == LineSeparator.LF || separator == LineSeparator.CR) {
+            return LINE_SEPARATOR.matcher(transformed).replaceAll(separator.asRawString());
+        }
+        return transformed;
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        return length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
@@ -0,0 +1,395 @@
+package co.elastic.indytransformer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds the source files to transform within a directory tree, skipping whole subtrees which can't contain sources to transform.
+ * <p>
+ * The following directories are not descended into:
+ * <ul>
+ *     <li>hidden directories like {@code .git}, {@code .idea} or the cache directory</li>
+ *     <li>{@code node_modules} directories</li>
+ *     <li>{@code target} directories next to a {@code pom.xml} and {@code build} directories next to a Gradle build
+ *     script, which contain the build output and generated sources. Directories with the same names elsewhere may be packages.</li>
+ *     <li>directories matching one of the exclude globs</li>
+ *     <li>directories ignored by a {@code .gitignore} file within the tree, if enabled</li>
+ * </ul>
+ * Files are returned if they match one of the include globs and none of the exclude globs and are not ignored.
+ * The globs are matched against the path relative to the walked directory, using {@code /} as separator.
+ * {@code *} and {@code ?} don't match {@code /}, {@code **} matches any number of directories.
+ * <p>
+ * The files are returned in a deterministic depth-first order: the entries of each directory are sorted by name and
+ * the files of a subdirectory are returned in place of the subdirectory, so that e.g. patches rendered from the results
+ * are reproducible. The subdirectories are listed ahead of the consumer concurrently using a thread pool, and the files
+ * are streamed to the consumer while the walk is still running, so that their transformation starts before the whole
+ * tree has been listed.
+ */
+public class SourceWalker {
+
+    public static final List<String> DEFAULT_INCLUDES = List.of("**/*.java");
+
+    private static final String GITIGNORE = ".gitignore";
+    /**
+     * The number of directories which are listed ahead of the consumer. Directories beyond are listed by the consumer itself.
+     */
+    private static final int MAX_LISTINGS_AHEAD = 256;
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private final boolean useGitignore;
+
+    public SourceWalker() {
+        this(DEFAULT_INCLUDES, List.of(), true);
+    }
+
+    /**
+     * @param includes     the globs of the files to return
+     * @param excludes     the globs of the files and directories to skip
+     * @param useGitignore whether to skip the files and directories ignored by {@code .gitignore} files within the tree
+     */
+    public SourceWalker(List<String> includes, List<String> excludes, boolean useGitignore) {
+        this.includes = includes.stream().map(glob -> Pattern.compile(globToRegex(glob))).toList();
+        this.excludes = excludes.stream().map(glob -> Pattern.compile(globToRegex(glob))).toList();
+        this.useGitignore = useGitignore;
+    }
+
+    /**
+     * Starts walking the tree in the background. Closing the returned stream stops the walk.
+     *
+     * @param parallelism the number of directories to list concurrently
+     * @return the matching files, in sorted depth-first order
+     * @throws IOException if the root is not a directory. Failures to list one of its subdirectories are thrown as
+     *                     {@link UncheckedIOException} by the stream.
+     */
+    public Stream<Path> walk(Path root, int parallelism) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw Files.exists(root) ? new NotDirectoryException(root.toString()) : new NoSuchFileException(root.toString());
+        }
+        Walk walk = new Walk(parallelism);
+        DirectoryTask rootTask = new DirectoryTask(walk, root, "", List.of());
+        walk.pool.execute(rootTask);
+        walk.pending.push(List.<Object>of(rootTask).iterator());
+        return StreamSupport.stream(walk, false).onClose(walk::close);
+    }
+
+    /**
+     * The state of a single walk, which is consumed as a spliterator by the returned stream. The consumer traverses the
+     * listed directories in order, while the pool lists the directories ahead of it.
+     */
+    private static final class Walk extends Spliterators.AbstractSpliterator<Path> {
+        private final ExecutorService pool;
+        private final Semaphore listingsAhead = new Semaphore(MAX_LISTINGS_AHEAD);
+        /**
+         * The remaining entries of the directories the consumer is in, the innermost directory first.
+         */
+        private final Deque<Iterator<Object>> pending = new ArrayDeque<>();
+        private volatile boolean closed;
+
+        private Walk(int parallelism) {
+            super(Long.MAX_VALUE, Spliterator.NONNULL | Spliterator.DISTINCT | Spliterator.ORDERED);
+            this.pool = new ForkJoinPool(parallelism);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Path> action) {
+            while (!pending.isEmpty()) {
+                Iterator<Object> entries = pending.peek();
+                if (!entries.hasNext()) {
+                    pending.pop();
+                    continue;
+                }
+                Object entry = entries.next();
+                if (entry instanceof Path file) {
+                    action.accept(file);
+                    return true;
+                }
+                pending.push(((DirectoryTask) entry).awaitEntries().iterator());
+            }
+            pool.shutdown();
+            return false;
+        }
+
+        private void close() {
+            closed = true;
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A rule of a {@code .gitignore} file.
+     *
+     * @param base     the directory of the {@code .gitignore} file relative to the root, empty for the root itself
+     * @param basename whether the pattern has no slash and is matched against the name of the file at any depth
+     */
+    record IgnoreRule(String base, Pattern pattern, boolean negated, boolean directoryOnly, boolean basename) {
+
+        boolean matches(String relativePath, String name, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            if (basename) {
+                return pattern.matcher(name).matches();
+            }
+            if (base.isEmpty()) {
+                return pattern.matcher(relativePath).matches();
+            }
+            return relativePath.startsWith(base + "/") && pattern.matcher(relativePath.substring(base.length() + 1)).matches();
+        }
+    }
+
+    /**
+     * Lists a directory, either ahead of the consumer in the pool or by the consumer itself once it reaches the directory.
+     */
+    private final class DirectoryTask implements Runnable {
+        private final Walk walk;
+        private final Path directory;
+        private final String relativePath;
+        private final List<IgnoreRule> inheritedRules;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        /**
+         * The sorted files and subdirectory tasks of the directory.
+         */
+        private final CompletableFuture<List<Object>> entries = new CompletableFuture<>();
+        /**
+         * Whether the listing holds a permit of {@link Walk#listingsAhead}, written before the entries are completed.
+         */
+        private boolean listedAhead;
+
+        private DirectoryTask(Walk walk, Path directory, String relativePath, List<IgnoreRule> inheritedRules) {
+            this.walk = walk;
+            this.directory = directory;
+            this.relativePath = relativePath;
+            this.inheritedRules = inheritedRules;
+        }
+
+        @Override
+        public void run() {
+            if (walk.closed || !walk.listingsAhead.tryAcquire()) {
+                // too far ahead, the consumer lists the directory once it gets there
+                return;
+            }
+            if (!claimed.compareAndSet(false, true)) {
+                walk.listingsAhead.release();
+                return;
+            }
+            listedAhead = true;
+            list();
+        }
+
+        /**
+         * Called by the consumer, lists the directory unless this has already been done by the pool.
+         */
+        List<Object> awaitEntries() {
+            if (claimed.compareAndSet(false, true)) {
+                list();
+            }
+            try {
+                List<Object> result = entries.get();
+                if (listedAhead) {
+                    walk.listingsAhead.release();
+                }
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted while walking the source tree"));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        private void list() {
+            try {
+                entries.complete(listEntries());
+            } catch (IOException e) {
+                entries.completeExceptionally(new UncheckedIOException(e));
+            } catch (Throwable t) {
+                entries.completeExceptionally(t);
+            }
+        }
+
+        private List<Object> listEntries() throws IOException {
+            List<IgnoreRule> rules = inheritedRules;
+            Path gitignore = directory.resolve(GITIGNORE);
+            if (useGitignore && Files.isRegularFile(gitignore)) {
+                rules = new ArrayList<>(inheritedRules);
+                rules.addAll(parseGitignore(relativePath, Files.readAllLines(gitignore, StandardCharsets.UTF_8)));
+            }
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                stream.forEach(children::add);
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+            children.sort(null);
+            List<Object> result = new ArrayList<>();
+            for (Path entry : children) {
+                String name = entry.getFileName().toString();
+                String entryPath = relativePath.isEmpty() ? name : relativePath + "/" + name;
+                boolean isDirectory = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+                if (isIgnored(rules, entryPath, name, isDirectory) || matchesAny(excludes, entryPath)) {
+                    continue;
+                }
+                if (isDirectory) {
+                    if (!isPruned(entry, name)) {
+                        result.add(new DirectoryTask(walk, entry, entryPath, rules));
+                    }
+                } else if (matchesAny(includes, entryPath)) {
+                    result.add(entry);
+                }
+            }
+            for (Object entry : result) {
+                if (entry instanceof DirectoryTask subdirectory) {
+                    try {
+                        walk.pool.execute(subdirectory);
+                    } catch (RejectedExecutionException e) {
+                        // the walk was closed
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static boolean isPruned(Path directory, String name) {
+        return switch (name) {
+            case "node_modules" -> true;
+            case "target" -> Files.exists(directory.resolveSibling("pom.xml"));
+            case "build" -> Files.exists(directory.resolveSibling("build.gradle"))
+                            || Files.exists(directory.resolveSibling("build.gradle.kts"))
+                            || Files.exists(directory.resolveSibling("settings.gradle"))
+                            || Files.exists(directory.resolveSibling("settings.gradle.kts"));
+            default -> name.startsWith(".");
+        };
+    }
+
+    private static boolean isIgnored(List<IgnoreRule> rules, String relativePath, String name, boolean directory) {
+        boolean ignored = false;
+        // the last matching rule wins, the rules of nested .gitignore files come after the ones of their parents
+        for (IgnoreRule rule : rules) {
+            if (rule.matches(relativePath, name, directory)) {
+                ignored = !rule.negated();
+            }
+        }
+        return ignored;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String relativePath) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(relativePath).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static List<IgnoreRule> parseGitignore(String base, List<String> lines) {
+        List<IgnoreRule> rules = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.stripTrailing();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            } else if (pattern.startsWith("\\")) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean basename = !pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            rules.add(new IgnoreRule(base, Pattern.compile(globToRegex(pattern)), negated, directoryOnly, basename));
+        }
+        return rules;
+    }
+
+    /**
+     * Translates a glob to a regular expression matching paths with {@code /} as separator.
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 3;
+                continue;
+            } else if (glob.startsWith("/**", i) && i + 3 == glob.length()) {
+                regex.append("(?:/.*)?");
+                i += 3;
+                continue;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+                continue;
+            }
+            switch (c) {
+                case '*' -> regex.append("[^/]*");
+                case '?' -> regex.append("[^/]");
+                case '[' -> {
+                    int end = glob.indexOf(']', i + 2);
+                    if (end == -1) {
+                        regex.append("\\[");
+                    } else {
+                        String characters = glob.substring(i + 1, end);
+                        if (characters.startsWith("!")) {
+                            characters = "^" + characters.substring(1);
+                        }
+                        regex.append('[').append(characters.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                        i = end;
+                    }
+                }
+                case '\\' -> {
+                    if (i + 1 < glob.length()) {
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    }
+                }
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+        return regex.toString();
+    }
+}
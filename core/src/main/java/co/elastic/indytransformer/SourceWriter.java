@@ -0,0 +1,119 @@
+package co.elastic.indytransformer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Replaces files atomically: the new content is written to a temporary file in the same directory, which is then renamed
+ * to the target. Readers therefore either see the old or the new content, but never a partially written file.
+ * The POSIX permissions of the replaced file are retained.
+ * <p>
+ * Flushing the written files and their directories to disk is the expensive part of a write, especially on network
+ * file systems. Instead of syncing every file individually, the written files are synced in batches, at the latest
+ * when the writer is closed. Not thread safe.
+ */
+public class SourceWriter implements Closeable {
+
+    private static final int SYNC_BATCH_SIZE = 256;
+
+    private final Set<Path> unsyncedFiles = new LinkedHashSet<>();
+    private final Set<Path> unsyncedDirectories = new LinkedHashSet<>();
+
+    public void write(Path file, byte[] content) throws IOException {
+        file = resolveTarget(file);
+        Path tempFile = createTempFile(file);
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            replace(tempFile, file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        unsyncedFiles.add(file);
+        unsyncedDirectories.add(file.getParent());
+        if (unsyncedFiles.size() >= SYNC_BATCH_SIZE) {
+            sync();
+        }
+    }
+
+    /**
+     * Flushes all files written since the last sync and the directories containing them to disk.
+     */
+    public void sync() throws IOException {
+        for (Path file : unsyncedFiles) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        unsyncedFiles.clear();
+        for (Path directory : unsyncedDirectories) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // not all platforms (e.g. Windows) support syncing directories, the renames are still durable eventually
+            }
+        }
+        unsyncedDirectories.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+    }
+
+    /**
+     * @return the file to replace instead of the given one, which is the linked file if the given one is a symbolic link
+     */
+    static Path resolveTarget(Path file) throws IOException {
+        if (Files.isSymbolicLink(file)) {
+            // replace the linked file instead of the link
+            return file.toRealPath();
+        }
+        return file.toAbsolutePath();
+    }
+
+    /**
+     * Creates the temporary file to write the new content of the {@linkplain #resolveTarget(Path) resolved} target to.
+     */
+    static Path createTempFile(Path target) throws IOException {
+        return Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+    }
+
+    /**
+     * Replaces the target with the temporary file, retaining the permissions of the target. The caller deletes the
+     * temporary file if this fails.
+     */
+    static void replace(Path tempFile, Path target) throws IOException {
+        copyPermissions(target, tempFile);
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        if (sourceView == null || !Files.exists(source)) {
+            return;
+        }
+        Set<PosixFilePermission> permissions = sourceView.readAttributes().permissions();
+        Files.getFileAttributeView(target, PosixFileAttributeView.class).setPermissions(permissions);
+    }
+}
@@ -0,0 +1,147 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.TokenRange;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.printer.lexicalpreservation.LexicalPreservingPrinter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Prints a compilation unit by splicing freshly printed text for the modified subtrees into the original source.
+ * <p>
+ * Setting up the {@link LexicalPreservingPrinter} for a whole compilation unit attaches the token text and an observer
+ * to every node, and printing it regenerates the text of every node. Instead, only the subtrees which are going to be
+ * modified (the advice classes) are registered via {@link #track(Node)}, and only those are printed lexically preserving.
+ * The text of all other nodes is copied from the original tokens. Imports are tracked separately,
+ * because the transformation adds imports to the compilation unit.
+ */
+public class SplicePrinter {
+
+    private static final DataKey<SplicePrinter> PRINTER_KEY = new DataKey<>() {
+    };
+
+    private final CompilationUnit compilationUnit;
+    private final List<ImportDeclaration> originalImports;
+    private final Set<Node> trackedRoots = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private SplicePrinter(CompilationUnit compilationUnit) {
+        this.compilationUnit = compilationUnit;
+        originalImports = new ArrayList<>(compilationUnit.getImports());
+    }
+
+    /**
+     * Prepares the given freshly parsed compilation unit for being printed by splicing.
+     */
+    public static void attach(CompilationUnit compilationUnit) {
+        compilationUnit.setData(PRINTER_KEY, new SplicePrinter(compilationUnit));
+    }
+
+    /**
+     * Removes the printer from the given compilation unit, releasing the tracked subtrees.
+     */
+    public static void detach(CompilationUnit compilationUnit) {
+        compilationUnit.removeData(PRINTER_KEY);
+    }
+
+    /**
+     * @return the printer attached to the given compilation unit, if any
+     */
+    public static Optional<SplicePrinter> of(CompilationUnit compilationUnit) {
+        if (compilationUnit.containsData(PRINTER_KEY)) {
+            return Optional.of(compilationUnit.getData(PRINTER_KEY));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Sets up lexical preservation for the given subtree, which must be called before the subtree is modified.
+     * Subtrees of already tracked nodes don't need to be tracked separately.
+     */
+    public void track(Node root) {
+        for (Node current = root; current != null; current = current.getParentNode().orElse(null)) {
+            if (trackedRoots.contains(current)) {
+                return;
+            }
+        }
+        LexicalPreservingPrinter.setup(root);
+        trackedRoots.add(root);
+    }
+
+    public String print() {
+        Map<JavaToken, Node> rootsByBeginToken = new IdentityHashMap<>();
+        for (Node root : trackedRoots) {
+            if (root.getParentNode().isEmpty() || root.findCompilationUnit().orElse(null) != compilationUnit) {
+                throw new IllegalStateException("A tracked node has been removed from the compilation unit: " + root);
+            }
+            rootsByBeginToken.put(root.getTokenRange().get().getBegin(), root);
+        }
+        Optional<String> addedImports = printAddedImports();
+        JavaToken importsEnd = originalImports.isEmpty() ? null : originalImports.get(originalImports.size() - 1).getTokenRange().get().getEnd();
+        JavaToken packageEnd = compilationUnit.getPackageDeclaration().flatMap(Node::getTokenRange).map(TokenRange::getEnd).orElse(null);
+
+        StringBuilder output = new StringBuilder();
+        JavaToken token = firstToken();
+        if (addedImports.isPresent() && importsEnd == null && packageEnd == null) {
+            output.append(addedImports.get()).append("\n\n");
+        }
+        while (token != null) {
+            Node root = rootsByBeginToken.get(token);
+            if (root != null) {
+                output.append(LexicalPreservingPrinter.print(root));
+                token = root.getTokenRange().get().getEnd();
+            } else {
+                output.append(token.getText());
+            }
+            if (addedImports.isPresent() && token == importsEnd) {
+                output.append('\n').append(addedImports.get());
+            } else if (addedImports.isPresent() && importsEnd == null && token == packageEnd) {
+                output.append("\n\n").append(addedImports.get());
+            }
+            token = token.getNextToken().orElse(null);
+        }
+        return output.toString();
+    }
+
+    /**
+     * @return the imports which have been added to the end of the import list, one per line, or empty if there are none
+     * @throws IllegalStateException if imports have been removed or reordered
+     */
+    private Optional<String> printAddedImports() {
+        NodeList<ImportDeclaration> imports = compilationUnit.getImports();
+        for (int i = 0; i < originalImports.size(); i++) {
+            if (i >= imports.size() || imports.get(i) != originalImports.get(i)) {
+                throw new IllegalStateException("Only adding imports is supported, but the imports have been modified");
+            }
+        }
+        if (imports.size() == originalImports.size()) {
+            return Optional.empty();
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = originalImports.size(); i < imports.size(); i++) {
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            result.append(imports.get(i).toString().trim());
+        }
+        return Optional.of(result.toString());
+    }
+
+    private JavaToken firstToken() {
+        JavaToken token = compilationUnit.getTokenRange().get().getBegin();
+        while (token.getPreviousToken().isPresent()) {
+            token = token.getPreviousToken().get();
+        }
+        return token;
+    }
+}
@@ -0,0 +1,310 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.TypeDeclaration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * An index of the types declared by the sources of a project, mapping their qualified names to the declaring source file.
+ * It is built by parsing all source files found by the {@link SourceWalker} in parallel, which covers all modules below
+ * the indexed directory, and stored in a compact binary file, which later runs map into memory instead of reading it.
+ * <p>
+ * The index stores a fingerprint of the paths, sizes and modification times of the indexed files. Later runs compare it
+ * to the current files using {@link #isUpToDate(Path, List)} and rebuild the index if files have been added, removed or modified.
+ * <p>
+ * The file starts with a header ({@code magic, version, type count, file count, fingerprint}), followed by the type table
+ * ({@code name offset, name length, file number}) sorted by the UTF-8 bytes of the qualified names, so that types can
+ * be looked up by binary search without decoding the file, the file table ({@code path offset, path length})
+ * and finally the UTF-8 encoded names and paths. All numbers are big endian ints, except for the fingerprint, which is
+ * a long. Paths are relative to the indexed directory and use {@code /} as separator.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public class SymbolIndex {
+
+    private static final String INDEX_FILE_NAME = "symbol-index.bin";
+    private static final int MAGIC = 0x49415449;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int TYPE_ENTRY_SIZE = 12;
+    private static final int FILE_ENTRY_SIZE = 8;
+
+    private final ByteBuffer data;
+    private final int typeCount;
+    private final int fileCount;
+    private final long fingerprint;
+
+    private SymbolIndex(ByteBuffer data) {
+        this.data = data;
+        typeCount = data.getInt(8);
+        fileCount = data.getInt(12);
+        fingerprint = data.getLong(16);
+    }
+
+    /**
+     * Loads the index from the given cache directory.
+     *
+     * @return the index or empty, if there is no index yet or it has been written in an unknown format
+     */
+    public static Optional<SymbolIndex> load(Path cacheDir) throws IOException {
+        Path indexFile = cacheDir.resolve(INDEX_FILE_NAME);
+        if (!Files.exists(indexFile)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                return Optional.empty();
+            }
+            SymbolIndex index = new SymbolIndex(data);
+            if (index.stringsOffset() > data.limit()) {
+                throw new IOException("Truncated symbol index " + indexFile);
+            }
+            return Optional.of(index);
+        }
+    }
+
+    /**
+     * @return the java source files within the given directory to index, in lexical order
+     */
+    public static List<Path> findSourceFiles(Path rootDir, int threads) throws IOException {
+        try (Stream<Path> walk = new SourceWalker().walk(rootDir, threads)) {
+            return walk.sorted().toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param files the current result of {@link #findSourceFiles(Path, int)}
+     * @return true, if the given files are the ones this index has been built from and none of them has been modified since
+     */
+    public boolean isUpToDate(Path rootDir, List<Path> files) throws IOException {
+        return fingerprint == fingerprint(rootDir, files);
+    }
+
+    /**
+     * Indexes the types declared by all java source files within the given directory using the given number of threads.
+     */
+    public static SymbolIndex build(Path rootDir, int threads) throws IOException, InterruptedException {
+        return build(rootDir, findSourceFiles(rootDir, threads), threads);
+    }
+
+    /**
+     * Indexes the types declared by the given files using the given number of threads.
+     * Files which can't be parsed are skipped. If a type is declared by multiple files, the first path in lexical order is used.
+     *
+     * @param files the result of {@link #findSourceFiles(Path, int)}
+     */
+    public static SymbolIndex build(Path rootDir, List<Path> files, int threads) throws IOException, InterruptedException {
+        // taken before parsing, so that files modified while the index is built are parsed again by the next run
+        long fingerprint = fingerprint(rootDir, files);
+        // comments and tokens are not needed to find the declared types
+        ThreadLocal<JavaParser> parsers = ThreadLocal.withInitial(() -> new JavaParser(new ParserConfiguration()
+                .setAttributeComments(false)
+                .setStoreTokens(false)));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> declaredTypes = new ArrayList<>(files.size());
+            for (Path file : files) {
+                declaredTypes.add(executor.submit(() -> findDeclaredTypes(parsers.get(), file)));
+            }
+            Map<String, String> sourceFiles = new TreeMap<>();
+            for (int i = 0; i < files.size(); i++) {
+                String path = rootDir.relativize(files.get(i)).toString().replace(File.separatorChar, '/');
+                for (String type : declaredTypes.get(i).get()) {
+                    sourceFiles.putIfAbsent(type, path);
+                }
+            }
+            return new SymbolIndex(encode(sourceFiles, fingerprint));
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to index " + rootDir, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> findDeclaredTypes(JavaParser parser, Path file) throws IOException {
+        ParseResult<CompilationUnit> result;
+        try {
+            result = parser.parse(SourceFile.of(Files.readAllBytes(file)).text());
+        } catch (NoSuchFileException e) {
+            // deleted since the walk, the fingerprint doesn't match anymore anyway
+            return List.of();
+        }
+        if (!result.isSuccessful() || result.getResult().isEmpty()) {
+            return List.of();
+        }
+        List<String> types = new ArrayList<>();
+        for (TypeDeclaration<?> type : result.getResult().get().findAll(TypeDeclaration.class)) {
+            // local classes don't have a qualified name
+            type.getFullyQualifiedName().ifPresent(types::add);
+        }
+        return types;
+    }
+
+    /**
+     * Hashes the relative paths, sizes and modification times of the given files. Files which don't exist anymore are skipped.
+     */
+    private static long fingerprint(Path rootDir, List<Path> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Path file : files) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            String path = rootDir.relativize(file).toString().replace(File.separatorChar, '/');
+            digest.update((path + '\t' + attributes.size() + '\t' + attributes.lastModifiedTime().toMillis() + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private record TypeEntry(byte[] name, int fileNumber) {
+    }
+
+    private static ByteBuffer encode(Map<String, String> sourceFiles, long fingerprint) {
+        List<TypeEntry> types = new ArrayList<>(sourceFiles.size());
+        List<byte[]> paths = new ArrayList<>();
+        Map<String, Integer> fileNumbers = new HashMap<>();
+        for (Map.Entry<String, String> entry : sourceFiles.entrySet()) {
+            int fileNumber = fileNumbers.computeIfAbsent(entry.getValue(), path -> {
+                paths.add(path.getBytes(StandardCharsets.UTF_8));
+                return paths.size() - 1;
+            });
+            types.add(new TypeEntry(entry.getKey().getBytes(StandardCharsets.UTF_8), fileNumber));
+        }
+        // the lookup compares the UTF-8 bytes, which doesn't match the string order for supplementary characters
+        types.sort((a, b) -> Arrays.compareUnsigned(a.name(), b.name()));
+
+        int stringsOffset = HEADER_SIZE + types.size() * TYPE_ENTRY_SIZE + paths.size() * FILE_ENTRY_SIZE;
+        int size = stringsOffset;
+        for (TypeEntry type : types) {
+            size += type.name().length;
+        }
+        for (byte[] path : paths) {
+            size += path.length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.putInt(MAGIC).putInt(VERSION).putInt(types.size()).putInt(paths.size()).putLong(fingerprint);
+        int stringOffset = stringsOffset;
+        for (TypeEntry type : types) {
+            data.putInt(stringOffset).putInt(type.name().length).putInt(type.fileNumber());
+            stringOffset += type.name().length;
+        }
+        for (byte[] path : paths) {
+            data.putInt(stringOffset).putInt(path.length);
+            stringOffset += path.length;
+        }
+        for (TypeEntry type : types) {
+            data.put(type.name());
+        }
+        for (byte[] path : paths) {
+            data.put(path);
+        }
+        return data.flip().asReadOnlyBuffer();
+    }
+
+    public void save(Path cacheDir) throws IOException {
+        Path indexFile = cacheDir.resolve(INDEX_FILE_NAME);
+        Files.createDirectories(cacheDir);
+        Path tempFile = Files.createTempFile(cacheDir, INDEX_FILE_NAME, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = data.duplicate().clear();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    private long stringsOffset() {
+        return HEADER_SIZE + (long) typeCount * TYPE_ENTRY_SIZE + (long) fileCount * FILE_ENTRY_SIZE;
+    }
+
+    public int size() {
+        return typeCount;
+    }
+
+    /**
+     * @param qualifiedName the qualified name of a type, using {@code .} as separator for nested types
+     * @return the path of the file declaring the given type, relative to the indexed directory
+     */
+    public Optional<String> findSourceFile(String qualifiedName) {
+        byte[] name = qualifiedName.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = typeCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_SIZE + middle * TYPE_ENTRY_SIZE;
+            int comparison = compare(data.getInt(entry), data.getInt(entry + 4), name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                int file = HEADER_SIZE + typeCount * TYPE_ENTRY_SIZE + data.getInt(entry + 8) * FILE_ENTRY_SIZE;
+                return Optional.of(decode(data.getInt(file), data.getInt(file + 4)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private int compare(int offset, int length, byte[] name) {
+        int commonLength = Math.min(length, name.length);
+        for (int i = 0; i < commonLength; i++) {
+            int comparison = Byte.compareUnsigned(data.get(offset + i), name[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, name.length);
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        data.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,20 @@
+package co.elastic.indytransformer;
+
+public enum TransformOutcome {
+    /**
+     * The file contained advice classes which have been rewritten.
+     */
+    TRANSFORMED,
+    /**
+     * The file was parsed, but did not require any changes (e.g. because it has already been migrated).
+     */
+    UNCHANGED,
+    /**
+     * The file was skipped without parsing, because it can't contain any advice classes.
+     */
+    NO_ADVICE,
+    /**
+     * The file was skipped without reading it, because it has not changed since it was processed by a previous run.
+     */
+    UP_TO_DATE
+}
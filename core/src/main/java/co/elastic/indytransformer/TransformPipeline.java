@@ -0,0 +1,429 @@
+package co.elastic.indytransformer;
+
+import com.google.common.cache.CacheStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Transforms source files in a pipeline of stages which are connected by bounded queues:
+ * <ol>
+ *     <li>discovery: lists the files to transform, e.g. by walking a directory tree</li>
+ *     <li>read: checks the {@link IncrementalIndex}, reads each remaining file once and applies the {@link AdvicePrefilter} to the read content</li>
+ *     <li>transform: parses, transforms and prints the files</li>
+ *     <li>write: replaces the files whose content changed using a {@link SourceWriter}</li>
+ * </ol>
+ * If a {@link ResultCache} is given, the transform stage takes the results of files with known content from it instead of
+ * transforming them, and adds the results of the other files.
+ * <p>
+ * If a {@link PatchOutput} is given, the files are not written. Instead, the transform stage renders the changes,
+ * which are reported with the results.
+ * <p>
+ * Parsing, transforming and printing are performed by the same worker, because the {@link AdviceTransformer} and the
+ * parsed compilation unit are bound to each other and the stages are CPU bound anyway.
+ * <p>
+ * The queues block producers when they are full, so that file discovery and reading can't run arbitrarily far ahead
+ * of the transformation. In addition, the number of files which are in flight is limited, which bounds the memory
+ * required for reporting the results in discovery order.
+ * <p>
+ * The discovered files are not read in discovery order, but the files with the highest cost estimated by the
+ * {@link FileCostModel} first. Discovery is much faster than the transformation, so the discovered queue holds up to
+ * all files in flight and the most expensive files are started first, instead of being picked up last by a single
+ * worker while all others are idle. The workers take the files from the shared queues whenever they are done with the
+ * previous one, which balances the remaining load across them.
+ */
+public class TransformPipeline {
+
+    private static final int QUEUE_CAPACITY_PER_THREAD = 4;
+    private static final int MAX_FILES_IN_FLIGHT = 4096;
+
+    /**
+     * The files to transform. The returned stream is closed after all files have been discovered.
+     */
+    public interface FileSource {
+        Stream<Path> open() throws IOException;
+    }
+
+    /**
+     * @param outcome the outcome or {@code null} if the transformation failed
+     * @param size    the size of the file in bytes, zero if it was not read
+     * @param nanos   the time spent on the file in the read, transform and write stages, excluding time spent waiting
+     * @param failure the failure or {@code null} if the transformation succeeded
+     * @param patch   the rendered changes if the file was transformed and a {@link PatchOutput} is used, otherwise {@code null}
+     */
+    public record FileResult(Path file, TransformOutcome outcome, long size, long nanos, Throwable failure, byte[] patch) {
+    }
+
+    private static final class Item {
+        private final long sequence;
+        private final Path file;
+        private SourceFile content;
+        private byte[] output;
+        private byte[] patch;
+        private long size;
+        private long nanos;
+        private long cost;
+        /**
+         * The modification time of the file before it was read, only known if an index is used.
+         */
+        private long lastModified;
+        private TransformOutcome outcome;
+        private Throwable failure;
+
+        private Item(long sequence, Path file) {
+            this.sequence = sequence;
+            this.file = file;
+        }
+
+        private FileResult toResult() {
+            return new FileResult(file, outcome, size, nanos, failure, patch);
+        }
+    }
+
+    private static final Item END = new Item(-1, null);
+
+    /**
+     * Orders the most expensive files first and the end marker last. Files of the same cost are kept in discovery order.
+     */
+    private static final Comparator<Item> HIGHEST_COST_FIRST = Comparator
+            .comparing((Item item) -> item == END)
+            .thenComparing(item -> item.cost, Comparator.reverseOrder())
+            .thenComparingLong(item -> item.sequence);
+
+    private final int threads;
+    private final int ioThreads;
+    private final boolean usePrefilter;
+    private final IncrementalIndex index;
+    private final TransformerStats stats;
+    private final PatchOutput patchOutput;
+    private final AdviceTypeSolver typeSolver;
+    private final FileCostModel costModel;
+    private final ResultCache resultCache;
+
+    public TransformPipeline(int threads, boolean usePrefilter, IncrementalIndex index, TransformerStats stats) {
+        this(threads, usePrefilter, index, stats, null);
+    }
+
+    /**
+     * @param threads      the number of transformation workers
+     * @param usePrefilter whether to skip files without advice annotations using the {@link AdvicePrefilter}
+     * @param index        the index used to skip files which did not change, may be {@code null}
+     * @param patchOutput  renders the changes instead of writing the files, may be {@code null}
+     */
+    public TransformPipeline(int threads, boolean usePrefilter, IncrementalIndex index, TransformerStats stats, PatchOutput patchOutput) {
+        this(threads, usePrefilter, index, stats, patchOutput, AdviceTypeSolver.getShared());
+    }
+
+    /**
+     * @param typeSolver the type solver shared by all workers
+     */
+    public TransformPipeline(int threads, boolean usePrefilter, IncrementalIndex index, TransformerStats stats, PatchOutput patchOutput,
+                             AdviceTypeSolver typeSolver) {
+        this(threads, usePrefilter, index, stats, patchOutput, typeSolver, FileCostModel.create(), null);
+    }
+
+    /**
+     * @param costModel   orders the files by their estimated cost and is updated with the timings of this run
+     * @param resultCache the cache of the transformation results by file content, may be {@code null}
+     */
+    public TransformPipeline(int threads, boolean usePrefilter, IncrementalIndex index, TransformerStats stats, PatchOutput patchOutput,
+                             AdviceTypeSolver typeSolver, FileCostModel costModel, ResultCache resultCache) {
+        if (index != null && patchOutput != null) {
+            throw new IllegalArgumentException("The index can't be updated if the files are not written");
+        }
+        if (resultCache != null && patchOutput != null) {
+            throw new IllegalArgumentException("The result cache can't be used if the files are not written");
+        }
+        this.threads = threads;
+        this.ioThreads = Math.max(1, threads / 2);
+        this.usePrefilter = usePrefilter;
+        this.index = index;
+        this.stats = stats;
+        this.patchOutput = patchOutput;
+        this.typeSolver = typeSolver;
+        this.costModel = costModel;
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Transforms all files of the given source. The results are passed to the consumer on the calling thread,
+     * in the order in which the files were discovered.
+     *
+     * @return the number of discovered files
+     */
+    public long run(FileSource source, Consumer<FileResult> resultConsumer) throws IOException, InterruptedException {
+        int capacity = threads * QUEUE_CAPACITY_PER_THREAD;
+        // bounded by the semaphore below
+        BlockingQueue<Item> discovered = new PriorityBlockingQueue<>(capacity, HIGHEST_COST_FIRST);
+        BlockingQueue<Item> read = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Item> transformed = new ArrayBlockingQueue<>(capacity);
+        // bounded by the semaphore below
+        BlockingQueue<Item> results = new LinkedBlockingQueue<>();
+        Semaphore inFlight = new Semaphore(MAX_FILES_IN_FLIGHT);
+        AtomicReference<Throwable> discoveryFailure = new AtomicReference<>();
+        AtomicInteger activeReaders = new AtomicInteger(ioThreads);
+        AtomicInteger activeWorkers = new AtomicInteger(threads);
+
+        // JavaParser is not thread safe, therefore every worker gets its own parser. The type solver is shared.
+        CacheStats typeCacheStatsBefore = typeSolver.cacheStats();
+        ThreadLocal<AdviceTransformer> transformers = ThreadLocal.withInitial(() -> new AdviceTransformer(typeSolver, stats));
+        ExecutorService executor = Executors.newFixedThreadPool(1 + ioThreads + threads + 1);
+        try {
+            executor.submit(() -> {
+                discover(source, discovered, inFlight, discoveryFailure);
+                return null;
+            });
+            for (int i = 0; i < ioThreads; i++) {
+                executor.submit(() -> {
+                    SourceFile.Buffer buffer = new SourceFile.Buffer();
+                    try {
+                        runStage(discovered, item -> read(item, buffer), read, results);
+                    } finally {
+                        if (activeReaders.decrementAndGet() == 0) {
+                            for (int j = 0; j < threads; j++) {
+                                read.put(END);
+                            }
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (int i = 0; i < threads; i++) {
+                executor.submit(() -> {
+                    try {
+                        runStage(read, item -> transform(item, transformers.get()), transformed, results);
+                    } finally {
+                        if (activeWorkers.decrementAndGet() == 0) {
+                            transformed.put(END);
+                        }
+                    }
+                    return null;
+                });
+            }
+            executor.submit(() -> {
+                try (SourceWriter writer = new SourceWriter()) {
+                    runStage(transformed, item -> write(item, writer), results, results);
+                } finally {
+                    results.put(END);
+                }
+                return null;
+            });
+
+            long discoveredFiles = emitInOrder(results, inFlight, resultConsumer);
+            Throwable failure = discoveryFailure.get();
+            if (failure instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) failure).getCause();
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException("Failed to discover the files to transform", failure);
+            }
+            return discoveredFiles;
+        } finally {
+            executor.shutdownNow();
+            // the solver is shared with other runs, only its usage during this run is recorded
+            CacheStats typeCacheStats = typeSolver.cacheStats().minus(typeCacheStatsBefore);
+            stats.add(TransformerStats.Counter.TYPE_CACHE_HITS, typeCacheStats.hitCount());
+            stats.add(TransformerStats.Counter.TYPE_CACHE_MISSES, typeCacheStats.missCount());
+            stats.add(TransformerStats.Counter.TYPE_CACHE_EVICTIONS, typeCacheStats.evictionCount());
+        }
+    }
+
+    private void discover(FileSource source, BlockingQueue<Item> discovered, Semaphore inFlight,
+                          AtomicReference<Throwable> failure) throws InterruptedException {
+        long start = stats.start();
+        try (Stream<Path> files = source.open()) {
+            long sequence = 0;
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                inFlight.acquire();
+                Item item = new Item(sequence++, file);
+                // files known to the index are usually skipped without being read, so they are not accessed to estimate them
+                item.cost = index != null && index.contains(file) ? costModel.estimate(file) : costModel.estimate(file, -1);
+                discovered.put(item);
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Throwable t) {
+            failure.set(t);
+        } finally {
+            stats.stop(TransformerStats.Phase.DISCOVERY, start);
+            for (int i = 0; i < ioThreads; i++) {
+                discovered.put(END);
+            }
+        }
+    }
+
+    private interface StageAction {
+        /**
+         * @return true if the item should be passed to the next stage, false if it is done
+         */
+        boolean process(Item item) throws Exception;
+    }
+
+    /**
+     * Processes items until the end marker is received. Items which are done or failed are passed to the results directly.
+     */
+    private static void runStage(BlockingQueue<Item> input, StageAction action, BlockingQueue<Item> output,
+                                 BlockingQueue<Item> results) throws InterruptedException {
+        while (true) {
+            Item item = input.take();
+            if (item == END) {
+                return;
+            }
+            long start = System.nanoTime();
+            boolean passOn;
+            try {
+                passOn = action.process(item);
+            } catch (Throwable t) {
+                item.failure = t;
+                passOn = false;
+            }
+            item.nanos += System.nanoTime() - start;
+            (passOn ? output : results).put(item);
+        }
+    }
+
+    private boolean read(Item item, SourceFile.Buffer buffer) throws IOException {
+        if (index != null && index.isUpToDate(item.file)) {
+            item.outcome = TransformOutcome.UP_TO_DATE;
+            return false;
+        }
+        long start = stats.start();
+        if (index != null) {
+            // taken before reading, so that modifications while the file is processed are detected by the next run
+            item.lastModified = Files.getLastModifiedTime(item.file).toMillis();
+        }
+        SourceFile source = SourceFile.read(item.file, buffer);
+        stats.stop(TransformerStats.Phase.READ, start);
+        item.size = source.size();
+        if (usePrefilter) {
+            start = stats.start();
+            boolean mayContainAdvice = AdvicePrefilter.mayContainAdvice(source.content());
+            stats.stop(TransformerStats.Phase.PREFILTER, start);
+            if (!mayContainAdvice) {
+                item.outcome = TransformOutcome.NO_ADVICE;
+                record(item, source.content());
+                return false;
+            }
+        }
+        // only the files which are passed on need their own copy of the read buffer
+        item.content = source.detach();
+        return true;
+    }
+
+    private boolean transform(Item item, AdviceTransformer transformer) throws IOException {
+        SourceFile source = item.content;
+        item.content = null;
+        if (patchOutput != null) {
+            return renderPatch(item, source, transformer.transform(source, item.file));
+        }
+        String cacheKey = null;
+        if (resultCache != null) {
+            cacheKey = resultCache.key(source.content());
+            Optional<ResultCache.Result> cached = resultCache.get(cacheKey);
+            if (cached.isPresent()) {
+                stats.increment(TransformerStats.Counter.RESULT_CACHE_HITS);
+                return applyOutput(item, source, Optional.ofNullable(cached.get().output()));
+            }
+            stats.increment(TransformerStats.Counter.RESULT_CACHE_MISSES);
+        }
+        Optional<byte[]> output = transformer.transform(source, item.file).flatMap(source::encodeIfChanged);
+        if (resultCache != null) {
+            resultCache.put(cacheKey, new ResultCache.Result(output.orElse(null)));
+        }
+        return applyOutput(item, source, output);
+    }
+
+    private boolean applyOutput(Item item, SourceFile source, Optional<byte[]> output) {
+        if (output.isEmpty()) {
+            item.outcome = TransformOutcome.UNCHANGED;
+            record(item, source.content());
+            return false;
+        }
+        item.output = output.get();
+        return true;
+    }
+
+    private boolean renderPatch(Item item, SourceFile source, Optional<String> output) throws IOException {
+        String transformed = output.map(source::normalizeLineSeparators).orElse(null);
+        if (transformed == null || transformed.equals(source.text())) {
+            item.outcome = TransformOutcome.UNCHANGED;
+            return false;
+        }
+        item.patch = patchOutput.render(item.file, source, transformed);
+        item.outcome = TransformOutcome.TRANSFORMED;
+        return false;
+    }
+
+    private boolean write(Item item, SourceWriter writer) throws IOException {
+        long start = stats.start();
+        TransformerEvents.WriteEvent event = TransformerEvents.begin(TransformerEvents.WriteEvent::new, item.file);
+        try {
+            writer.write(item.file, item.output);
+        } finally {
+            TransformerEvents.end(event);
+        }
+        stats.stop(TransformerStats.Phase.WRITE, start);
+        item.outcome = TransformOutcome.TRANSFORMED;
+        if (index != null) {
+            item.lastModified = Files.getLastModifiedTime(item.file).toMillis();
+            record(item, ByteBuffer.wrap(item.output));
+        }
+        item.output = null;
+        return false;
+    }
+
+    /**
+     * @param content the content which has been processed or written
+     */
+    private void record(Item item, ByteBuffer content) {
+        if (index != null) {
+            index.record(item.file, item.outcome, item.lastModified, content);
+        }
+    }
+
+    private long emitInOrder(BlockingQueue<Item> results, Semaphore inFlight, Consumer<FileResult> resultConsumer) throws InterruptedException {
+        Map<Long, Item> pending = new HashMap<>();
+        long next = 0;
+        while (true) {
+            Item item = results.take();
+            if (item == END) {
+                return next;
+            }
+            if (item.failure != null && index != null) {
+                index.remove(item.file);
+            }
+            stats.recordFile(item.file, item.nanos);
+            if (item.failure == null && item.outcome != TransformOutcome.UP_TO_DATE) {
+                costModel.record(item.file, item.size, item.nanos);
+            }
+            pending.put(item.sequence, item);
+            for (Item ready = pending.remove(next); ready != null; ready = pending.remove(next)) {
+                resultConsumer.accept(ready.toResult());
+                inFlight.release();
+                next++;
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * JDK Flight Recorder events for the phases of the transformation, so that they can be told apart in a recording of a run.
+ * <p>
+ * The events are only created if they have been enabled using {@link #setEnabled(boolean)} or the
+ * {@value #ENABLED_PROPERTY} system property. Otherwise, {@link #begin} returns {@code null} without allocating
+ * anything. Even if they are enabled, the events cost little more than a check whether they are recorded, unless
+ * a recording is running.
+ */
+public final class TransformerEvents {
+
+    public static final String ENABLED_PROPERTY = "indytransformer.jfr";
+
+    private static final String CATEGORY = "Indy Advice Transformer";
+
+    private static final DataKey<Path> FILE_KEY = new DataKey<>() {
+    };
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private TransformerEvents() {
+    }
+
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public abstract static class TransformerEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Advice Class")
+        String adviceClass;
+    }
+
+    @Name("co.elastic.indytransformer.Parse")
+    @Label("Parse")
+    public static final class ParseEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.Plan")
+    @Label("Plan")
+    @Description("Creating the transformation plan of a class, including the required annotation resolutions")
+    public static final class PlanEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.RewriteLocals")
+    @Label("Rewrite Locals")
+    @Description("Moving Advice.Local and Advice.Enter parameters into the value returned by the enter method")
+    public static final class RewriteLocalsEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.RewriteReturn")
+    @Label("Rewrite Return")
+    public static final class RewriteReturnEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.RewriteFields")
+    @Label("Rewrite Fields")
+    public static final class RewriteFieldsEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.RewriteArguments")
+    @Label("Rewrite Arguments")
+    public static final class RewriteArgumentsEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.RewriteReturnStatements")
+    @Label("Rewrite Return Statements")
+    @Description("Replacing the return statements of an advice method with the values to return, which are shared by the other rewrites")
+    public static final class RewriteReturnStatementsEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.Print")
+    @Label("Print")
+    public static final class PrintEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.Write")
+    @Label("Write")
+    public static final class WriteEvent extends TransformerEvent {
+    }
+
+    @Name("co.elastic.indytransformer.AnnotationResolution")
+    @Label("Annotation Resolution")
+    @Description("Resolving the type of an annotation using the symbol solver")
+    public static final class AnnotationResolutionEvent extends TransformerEvent {
+        @Label("Annotation")
+        String annotation;
+
+        @Label("Resolved Type")
+        String resolvedType;
+
+        void resolved(String annotation, Optional<String> resolvedType) {
+            this.annotation = annotation;
+            this.resolvedType = resolvedType.orElse(null);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        TransformerEvents.enabled = enabled;
+    }
+
+    /**
+     * Remembers the file the compilation unit was read from, which is reported by the events of its nodes.
+     */
+    public static void attach(CompilationUnit compilationUnit, Path file) {
+        if (file != null) {
+            compilationUnit.setData(FILE_KEY, file);
+        }
+    }
+
+    /**
+     * Starts an event for the given file.
+     *
+     * @return the started event or {@code null} if the events are disabled
+     */
+    static <E extends TransformerEvent> E begin(Supplier<E> eventType, Path file) {
+        if (!enabled) {
+            return null;
+        }
+        E event = eventType.get();
+        if (event.isEnabled() && file != null) {
+            event.file = file.toString();
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts an event for the given node, which reports the file of its compilation unit and the advice class the node
+     * belongs to.
+     *
+     * @return the started event or {@code null} if the events are disabled
+     */
+    static <E extends TransformerEvent> E begin(Supplier<E> eventType, Node node) {
+        if (!enabled) {
+            return null;
+        }
+        E event = eventType.get();
+        if (event.isEnabled()) {
+            event.file = node.findCompilationUnit()
+                    .filter(cu -> cu.containsData(FILE_KEY))
+                    .map(cu -> cu.getData(FILE_KEY).toString())
+                    .orElse(null);
+            Optional<ClassOrInterfaceDeclaration> adviceClass = node instanceof ClassOrInterfaceDeclaration declaration
+                    ? Optional.of(declaration)
+                    : node.findAncestor(ClassOrInterfaceDeclaration.class);
+            event.adviceClass = adviceClass
+                    .map(declaration -> declaration.getFullyQualifiedName().orElseGet(declaration::getNameAsString))
+                    .orElse(null);
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the given event and commits it if it is recorded.
+     *
+     * @param event the event returned by {@link #begin}, may be {@code null}
+     */
+    static void end(TransformerEvent event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    /**
+     * Runs the action within an event for the given node, which is ended even if the action fails.
+     */
+    static void run(Supplier<? extends TransformerEvent> eventType, Node node, Runnable action) {
+        TransformerEvent event = begin(eventType, node);
+        try {
+            action.run();
+        } finally {
+            end(event);
+        }
+    }
+
+    /**
+     * Computes the result within an event for the given node, which is ended even if the computation fails.
+     */
+    static <T> T run(Supplier<? extends TransformerEvent> eventType, Node node, Supplier<T> action) {
+        TransformerEvent event = begin(eventType, node);
+        try {
+            return action.get();
+        } finally {
+            end(event);
+        }
+    }
+
+    /**
+     * Runs the action within the event of the given rewrite.
+     */
+    static void run(ValueToReturn.Rewrite rewrite, Node node, Runnable action) {
+        run(eventType(rewrite), node, action);
+    }
+
+    private static Supplier<? extends TransformerEvent> eventType(ValueToReturn.Rewrite rewrite) {
+        return switch (rewrite) {
+            case LOCALS -> RewriteLocalsEvent::new;
+            case RETURN -> RewriteReturnEvent::new;
+            case FIELDS -> RewriteFieldsEvent::new;
+            case ARGUMENTS -> RewriteArgumentsEvent::new;
+        };
+    }
+}
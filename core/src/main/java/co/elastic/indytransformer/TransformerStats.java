@@ -0,0 +1,276 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.Node;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per-phase timings, counters and the slowest files of a run. Instances are thread safe.
+ * <p>
+ * Timings are recorded using {@link #start()} and {@link #stop(Phase, long)}. The {@link #DISABLED} instance ignores
+ * all recordings, so that instrumented code doesn't need to check whether statistics are enabled.
+ */
+public class TransformerStats {
+
+    public enum Phase {
+        DISCOVERY,
+        PREFILTER,
+        READ,
+        PARSE,
+        /**
+         * Creating the {@link AdviceTransformationPlan}s, including the required annotation resolutions.
+         */
+        PLAN,
+        /**
+         * Executing the {@link AdviceTransformationPlan}s.
+         */
+        REWRITE,
+        PRINT,
+        WRITE,
+        /**
+         * Symbol solver invocations for resolving annotations. This time is already contained in {@link #PLAN} and {@link #REWRITE}.
+         */
+        SYMBOL_RESOLUTION
+    }
+
+    public enum Counter {
+        FILES_SCANNED,
+        FILES_UP_TO_DATE,
+        FILES_WITHOUT_ADVICE,
+        FILES_PARSED,
+        FILES_TRANSFORMED,
+        FILES_FAILED,
+        ANNOTATION_RESOLUTIONS,
+        ANNOTATION_CACHE_HITS,
+        ANNOTATION_IMPORT_HITS,
+        /**
+         * Lookups answered by the bounded JDK type cache of the {@link AdviceTypeSolver}.
+         */
+        TYPE_CACHE_HITS,
+        TYPE_CACHE_MISSES,
+        TYPE_CACHE_EVICTIONS,
+        /**
+         * Files whose transformation result was taken from the {@link ResultCache}.
+         */
+        RESULT_CACHE_HITS,
+        RESULT_CACHE_MISSES
+    }
+
+    public static final TransformerStats DISABLED = new TransformerStats(0) {
+        @Override
+        public void stop(Phase phase, long startNanos) {
+        }
+
+        @Override
+        public void increment(Counter counter) {
+        }
+
+        @Override
+        public void add(Counter counter, long value) {
+        }
+
+        @Override
+        public void recordFile(Path file, long nanos) {
+        }
+    };
+
+    private static final DataKey<TransformerStats> STATS_KEY = new DataKey<>() {
+    };
+
+    private record FileTiming(Path file, long nanos) {
+    }
+
+    private final Histogram[] phases = new Histogram[Phase.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final int slowestFilesLimit;
+    private final PriorityQueue<FileTiming> slowestFiles = new PriorityQueue<>(Comparator.comparingLong(FileTiming::nanos));
+
+    public TransformerStats(int slowestFilesLimit) {
+        this.slowestFilesLimit = slowestFilesLimit;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new Histogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Makes the given statistics available to code which only has access to the AST, see {@link #of(Node)}.
+     */
+    public static void attach(CompilationUnit compilationUnit, TransformerStats stats) {
+        compilationUnit.setData(STATS_KEY, stats);
+    }
+
+    /**
+     * @return the statistics attached to the compilation unit of the given node or {@link #DISABLED}
+     */
+    public static TransformerStats of(Node node) {
+        return node.findCompilationUnit()
+                .filter(cu -> cu.containsData(STATS_KEY))
+                .map(cu -> cu.getData(STATS_KEY))
+                .orElse(DISABLED);
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(Phase phase, long startNanos) {
+        phases[phase.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long value) {
+        counters[counter.ordinal()].add(value);
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public void recordFile(Path file, long nanos) {
+        synchronized (slowestFiles) {
+            if (slowestFiles.size() < slowestFilesLimit) {
+                slowestFiles.add(new FileTiming(file, nanos));
+            } else if (!slowestFiles.isEmpty() && slowestFiles.peek().nanos() < nanos) {
+                slowestFiles.poll();
+                slowestFiles.add(new FileTiming(file, nanos));
+            }
+        }
+    }
+
+    private List<FileTiming> getSlowestFiles() {
+        List<FileTiming> result;
+        synchronized (slowestFiles) {
+            result = new ArrayList<>(slowestFiles);
+        }
+        result.sort(Comparator.comparingLong(FileTiming::nanos).reversed());
+        return result;
+    }
+
+    public void printSummary(PrintStream out) {
+        out.println(String.format(Locale.ROOT, "%-18s %10s %8s %10s %10s %10s", "Phase", "total ms", "count", "p50 ms", "p99 ms", "max ms"));
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = phases[phase.ordinal()];
+            if (histogram.count() == 0) {
+                continue;
+            }
+            out.println(String.format(Locale.ROOT, "%-18s %10.1f %8d %10.3f %10.3f %10.3f",
+                    phase.name().toLowerCase(Locale.ROOT),
+                    toMillis(histogram.totalNanos()),
+                    histogram.count(),
+                    toMillis(histogram.percentileNanos(0.5)),
+                    toMillis(histogram.percentileNanos(0.99)),
+                    toMillis(histogram.maxNanos())));
+        }
+        for (Counter counter : Counter.values()) {
+            out.println(String.format(Locale.ROOT, "%-26s %d", counter.name().toLowerCase(Locale.ROOT), get(counter)));
+        }
+        List<FileTiming> slowest = getSlowestFiles();
+        if (!slowest.isEmpty()) {
+            out.println("Slowest files:");
+            for (FileTiming timing : slowest) {
+                out.println(String.format(Locale.ROOT, "%10.1f ms %s", toMillis(timing.nanos()), timing.file()));
+            }
+        }
+    }
+
+    public void writeJson(Path file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"phases\": {");
+        Phase[] allPhases = Phase.values();
+        for (int i = 0; i < allPhases.length; i++) {
+            Histogram histogram = phases[allPhases[i].ordinal()];
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    \"").append(allPhases[i].name().toLowerCase(Locale.ROOT)).append("\": {")
+                    .append("\"count\": ").append(histogram.count())
+                    .append(", \"totalNanos\": ").append(histogram.totalNanos())
+                    .append(", \"p50Nanos\": ").append(histogram.percentileNanos(0.5))
+                    .append(", \"p90Nanos\": ").append(histogram.percentileNanos(0.9))
+                    .append(", \"p99Nanos\": ").append(histogram.percentileNanos(0.99))
+                    .append(", \"maxNanos\": ").append(histogram.maxNanos())
+                    .append("}");
+        }
+        json.append("\n  },\n  \"counters\": {");
+        Counter[] allCounters = Counter.values();
+        for (int i = 0; i < allCounters.length; i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    \"").append(allCounters[i].name().toLowerCase(Locale.ROOT)).append("\": ").append(get(allCounters[i]));
+        }
+        json.append("\n  },\n  \"slowestFiles\": [");
+        List<FileTiming> slowest = getSlowestFiles();
+        for (int i = 0; i < slowest.size(); i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"path\": ").append(Json.quote(slowest.get(i).file().toString()))
+                    .append(", \"nanos\": ").append(slowest.get(i).nanos()).append("}");
+        }
+        json.append("\n  ]\n}\n");
+        Files.writeString(file, json, StandardCharsets.UTF_8);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * A lock-free histogram with power-of-two buckets. Percentiles are reported as the upper bound of the bucket they fall in.
+     */
+    private static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long totalNanos() {
+            return total.sum();
+        }
+
+        long maxNanos() {
+            return max.get();
+        }
+
+        long percentileNanos(double percentile) {
+            long threshold = (long) Math.ceil(count() * percentile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= threshold && seen > 0) {
+                    long upperBound = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                    return Math.min(upperBound, maxNanos());
+                }
+            }
+            return 0;
+        }
+    }
+}
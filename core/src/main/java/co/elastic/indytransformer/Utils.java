@@ -14,12 +14,9 @@ import com.github.javaparser.ast.expr.NameExpr;
 import com.github.javaparser.ast.expr.NormalAnnotationExpr;
 import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
 import com.github.javaparser.ast.nodeTypes.NodeWithAnnotations;
-import com.github.javaparser.resolution.Context;
 import com.github.javaparser.resolution.TypeSolver;
-import com.github.javaparser.resolution.declarations.ResolvedTypeDeclaration;
-import com.github.javaparser.resolution.model.SymbolReference;
-import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFactory;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collector;
@@ -43,9 +40,8 @@ public class Utils {
 
     public static Optional<AnnotationExpr> getAnnotation(NodeWithAnnotations<?> node, Predicate<String> annotationTypeNamePredicate, TypeSolver typeSolver) {
         for (AnnotationExpr anno : node.getAnnotations()) {
-            Context context = JavaParserFactory.getContext(anno, typeSolver);
-            SymbolReference<ResolvedTypeDeclaration> resolvedType = context.solveType(anno.getNameAsString(), null);
-            if (resolvedType.isSolved() && annotationTypeNamePredicate.test(resolvedType.getCorrespondingDeclaration().getQualifiedName())) {
+            Optional<String> qualifiedName = AnnotationResolutionCache.resolveQualifiedName(anno, typeSolver);
+            if (qualifiedName.isPresent() && annotationTypeNamePredicate.test(qualifiedName.get())) {
                 return Optional.of(anno);
             }
         }
@@ -120,6 +116,18 @@ public class Utils {
         return false;
     }
 
+    /**
+     * Like {@link List#indexOf(Object)}, but compares by identity instead of the structural equality of nodes.
+     */
+    public static int indexOfIdentity(List<? extends Node> nodes, Node node) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public static <T> Collector<T, ?, Optional<T>> atMostOne() {
         return Collectors.collectingAndThen(Collectors.toList(), elements -> {
             if (elements.isEmpty()) {
@@ -149,10 +157,12 @@ public class Utils {
         throw new IllegalStateException("Not a int literal expression: " + expr);
     }
 
-    public static void addImports(MethodDeclaration method, Class<?>... classesToImport) {
+    public static void addImports(MethodDeclaration method, String... qualifiedNamesToImport) {
         CompilationUnit compilationUnit = method.findCompilationUnit().get();
-        for (Class<?> clazz : classesToImport) {
-            compilationUnit.addImport(clazz);
+        for (String qualifiedName : qualifiedNamesToImport) {
+            compilationUnit.addImport(qualifiedName);
         }
+        // the added imports can change what annotation names resolve to
+        AnnotationResolutionCache.invalidate(compilationUnit);
     }
 }
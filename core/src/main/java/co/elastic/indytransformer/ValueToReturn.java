@@ -5,8 +5,19 @@ import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.nodeTypes.NodeWithSimpleName;
 import com.github.javaparser.ast.nodeTypes.NodeWithType;
 
+/**
+ * @param rewrite the rewrite this value is returned for
+ */
 public record ValueToReturn<T extends Node & NodeWithSimpleName<?> & NodeWithType<?, ?>>(T parameterOrVariable,
+                                                                                         Rewrite rewrite,
                                                                                          MethodAnnotationgGenerator annoGenerator) {
+    enum Rewrite {
+        LOCALS,
+        RETURN,
+        FIELDS,
+        ARGUMENTS
+    }
+
     interface MethodAnnotationgGenerator {
         void addAnnotation(MethodDeclaration method, int returnValueIndex);
     }
@@ -0,0 +1,37 @@
+// Generated by AdviceAnnotationsTest from the byte-buddy test dependency, do not edit.
+package net.bytebuddy.asm;
+
+public class Advice {
+    public @interface AllArguments {}
+    public @interface Argument {}
+    public static class AssignReturned {
+        public @interface AsScalar {}
+        public @interface ToAllArguments {}
+        public @interface ToArguments {
+            public @interface ToArgument {}
+        }
+        public @interface ToFields {
+            public @interface ToField {}
+        }
+        public @interface ToReturned {}
+        public @interface ToThis {}
+        public @interface ToThrown {}
+    }
+    public @interface DynamicConstant {}
+    public @interface Enter {}
+    public @interface Exit {}
+    public @interface FieldGetterHandle {}
+    public @interface FieldSetterHandle {}
+    public @interface FieldValue {}
+    public @interface Handle {}
+    public @interface Local {}
+    public @interface OnMethodEnter {}
+    public @interface OnMethodExit {}
+    public @interface Origin {}
+    public @interface Return {}
+    public @interface SelfCallHandle {}
+    public @interface StubValue {}
+    public @interface This {}
+    public @interface Thrown {}
+    public @interface Unused {}
+}
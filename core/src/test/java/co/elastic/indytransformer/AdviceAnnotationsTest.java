@@ -0,0 +1,96 @@
+package co.elastic.indytransformer;
+
+import net.bytebuddy.asm.Advice;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies that the embedded advice model and the annotation names match the bytebuddy version on the test classpath.
+ * <p>
+ * After a bytebuddy upgrade the model can be regenerated by running this test with {@code -Dupdate.advice.model=true}.
+ */
+public class AdviceAnnotationsTest {
+
+    private static final Path MODEL_SOURCE = Paths.get("src/main/resources/co/elastic/indytransformer", AdviceAnnotations.MODEL_RESOURCE);
+
+    @Test
+    public void namesMatchBytebuddy() {
+        assertEquals(Advice.class.getCanonicalName(), AdviceAnnotations.ADVICE);
+        assertEquals(Advice.OnMethodEnter.class.getCanonicalName(), AdviceAnnotations.ON_METHOD_ENTER);
+        assertEquals(Advice.OnMethodExit.class.getCanonicalName(), AdviceAnnotations.ON_METHOD_EXIT);
+        assertEquals(Advice.Return.class.getCanonicalName(), AdviceAnnotations.RETURN);
+        assertEquals(Advice.FieldValue.class.getCanonicalName(), AdviceAnnotations.FIELD_VALUE);
+        assertEquals(Advice.Argument.class.getCanonicalName(), AdviceAnnotations.ARGUMENT);
+        assertEquals(Advice.Local.class.getCanonicalName(), AdviceAnnotations.LOCAL);
+        assertEquals(Advice.Enter.class.getCanonicalName(), AdviceAnnotations.ENTER);
+        assertEquals(Advice.AssignReturned.class.getCanonicalName(), AdviceAnnotations.ASSIGN_RETURNED);
+        assertEquals(Advice.AssignReturned.ToArguments.ToArgument.class.getCanonicalName(), AdviceAnnotations.ASSIGN_RETURNED_TO_ARGUMENT);
+        assertEquals(Advice.AssignReturned.ToFields.ToField.class.getCanonicalName(), AdviceAnnotations.ASSIGN_RETURNED_TO_FIELD);
+    }
+
+    @Test
+    public void modelMatchesBytebuddy() throws IOException {
+        String expected = generateModel();
+        if (Boolean.getBoolean("update.advice.model")) {
+            Files.writeString(MODEL_SOURCE, expected, StandardCharsets.UTF_8);
+        }
+        String actual = Files.exists(MODEL_SOURCE) ? Files.readString(MODEL_SOURCE, StandardCharsets.UTF_8) : "";
+        assertEquals(expected, actual, "The advice model is outdated, regenerate it by running this test with -Dupdate.advice.model=true");
+    }
+
+    static String generateModel() {
+        StringBuilder model = new StringBuilder();
+        model.append("// Generated by AdviceAnnotationsTest from the byte-buddy test dependency, do not edit.\n");
+        model.append("package ").append(Advice.class.getPackageName()).append(";\n\n");
+        appendType(model, Advice.class, "");
+        return model.toString();
+    }
+
+    private static void appendType(StringBuilder model, Class<?> type, String indent) {
+        String kind;
+        if (type.isAnnotation()) {
+            kind = "@interface";
+        } else if (type.isInterface()) {
+            kind = "interface";
+        } else if (type.isEnum()) {
+            kind = "enum";
+        } else {
+            kind = type.getEnclosingClass() != null ? "static class" : "class";
+        }
+        List<Class<?>> nestedTypes = Arrays.stream(type.getDeclaredClasses())
+                .filter(AdviceAnnotationsTest::isModelled)
+                .sorted(Comparator.comparing(Class::getSimpleName))
+                .toList();
+        model.append(indent).append("public ").append(kind).append(' ').append(type.getSimpleName()).append(" {");
+        if (nestedTypes.isEmpty()) {
+            model.append("}\n");
+            return;
+        }
+        model.append('\n');
+        if (type.isEnum()) {
+            model.append(indent).append("    ;\n");
+        }
+        for (Class<?> nested : nestedTypes) {
+            appendType(model, nested, indent + "    ");
+        }
+        model.append(indent).append("}\n");
+    }
+
+    private static boolean isModelled(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            return false;
+        }
+        return type.isAnnotation() || Arrays.stream(type.getDeclaredClasses()).anyMatch(AdviceAnnotationsTest::isModelled);
+    }
+}
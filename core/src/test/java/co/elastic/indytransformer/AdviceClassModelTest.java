@@ -0,0 +1,139 @@
+package co.elastic.indytransformer;
+
+import co.elastic.indytransformer.AdviceClassModel.AdviceMethod;
+import co.elastic.indytransformer.AdviceClassModel.AdviceParameter;
+import co.elastic.indytransformer.AdviceClassModel.ParameterKind;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdviceClassModelTest {
+
+    TypeSolver typeSolver = new ReflectionTypeSolver(false);
+
+    @Test
+    public void classifiesAdviceParameters() {
+        AdviceClassModel model = parseModel("""
+                import net.bytebuddy.asm.Advice;
+                public class Foo {
+                    @Advice.OnMethodEnter
+                    public static void enter(@Advice.Argument(value = 0, readOnly = false) String arg,
+                                             @Advice.Argument(1) String readArg,
+                                             @Advice.FieldValue(value = "field", readOnly = false) int field,
+                                             @Advice.Local("foo") long foo) {
+                    }
+                    @Advice.OnMethodExit
+                    public static void exit(@Advice.Return(readOnly = false) Object returned,
+                                            @Advice.Enter Object entered,
+                                            @Advice.Local("foo") long foo,
+                                            @Deprecated String other) {
+                    }
+                }
+                """);
+        assertTrue(model.isAdvice());
+
+        AdviceMethod enter = model.enterMethod().get();
+        assertEquals("enter", enter.declaration().getNameAsString());
+        assertFalse(enter.assignsReturned());
+        assertEquals(List.of("arg", "readArg"), names(enter.parameters(ParameterKind.ARGUMENT)));
+        assertEquals(List.of("arg"), names(enter.writtenParameters(ParameterKind.ARGUMENT)));
+        assertEquals(List.of("field"), names(enter.writtenParameters(ParameterKind.FIELD_VALUE)));
+        assertEquals("foo", enter.locals().get("foo").parameter().getNameAsString());
+
+        AdviceMethod exit = model.exitMethod().get();
+        assertEquals(List.of("returned"), names(exit.writtenParameters(ParameterKind.RETURN)));
+        assertEquals(List.of("entered"), names(exit.parameters(ParameterKind.ENTER)));
+        assertEquals(List.of("foo"), names(exit.parameters(ParameterKind.LOCAL)));
+
+        Parameter returned = exit.declaration().getParameter(0);
+        Parameter other = exit.declaration().getParameter(3);
+        assertTrue(exit.hasKind(returned, ParameterKind.RETURN));
+        assertFalse(exit.hasKind(returned, ParameterKind.ARGUMENT));
+        assertFalse(exit.hasKind(other, ParameterKind.RETURN));
+    }
+
+    @Test
+    public void detectsAssignReturned() {
+        AdviceClassModel model = parseModel("""
+                import net.bytebuddy.asm.Advice;
+                public class Foo {
+                    @Advice.OnMethodEnter
+                    @Advice.AssignReturned.ToArguments(@Advice.AssignReturned.ToArguments.ToArgument(0))
+                    public static String enter() {
+                        return null;
+                    }
+                }
+                """);
+        assertTrue(model.enterMethod().get().assignsReturned());
+        assertTrue(model.exitMethod().isEmpty());
+    }
+
+    @Test
+    public void skipsParametersOfMigratedClasses() {
+        String source = """
+                import net.bytebuddy.asm.Advice;
+                public class Foo {
+                    private static final boolean RO = true;
+                    @Advice.OnMethodEnter
+                    @Advice.AssignReturned.ToArguments(@Advice.AssignReturned.ToArguments.ToArgument(0))
+                    public static String enter(@Advice.Argument(value = 0, readOnly = RO) String arg) {
+                        return arg;
+                    }
+                    @Advice.OnMethodExit
+                    public static void exit(@Advice.Argument(value = 0, readOnly = RO) String arg) {
+                    }
+                }
+                """;
+        AdviceClassModel model = parseModel(source);
+        assertTrue(model.isAlreadyMigrated());
+        assertTrue(model.exitMethod().get().parameters(ParameterKind.ARGUMENT).isEmpty());
+        // the constant is not evaluated, the class is left untouched
+        assertTrue(new AdviceTransformer(typeSolver).transform(source.getBytes(StandardCharsets.UTF_8)).isEmpty());
+    }
+
+    @Test
+    public void ignoresNonAdviceClasses() {
+        AdviceClassModel model = parseModel("""
+                public class Foo {
+                    public static void enter(@Deprecated String arg) {
+                    }
+                }
+                """);
+        assertFalse(model.isAdvice());
+    }
+
+    @Test
+    public void rejectsMultipleEnterMethods() {
+        assertThrows(IllegalStateException.class, () -> parseModel("""
+                import net.bytebuddy.asm.Advice;
+                public class Foo {
+                    @Advice.OnMethodEnter
+                    public static void enter() {
+                    }
+                    @Advice.OnMethodEnter
+                    public static void enter2() {
+                    }
+                }
+                """));
+    }
+
+    private AdviceClassModel parseModel(String source) {
+        ClassOrInterfaceDeclaration cls = StaticJavaParser.parse(source).findFirst(ClassOrInterfaceDeclaration.class).get();
+        return AdviceClassModel.of(cls, typeSolver);
+    }
+
+    private static List<String> names(List<AdviceParameter> parameters) {
+        return parameters.stream().map(parameter -> parameter.parameter().getNameAsString()).toList();
+    }
+}
@@ -0,0 +1,310 @@
+package co.elastic.indytransformer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic source trees containing a configurable mix of advice and regular classes.
+ * The output is fully determined by the {@link Config}, including the seed.
+ * <p>
+ * The advice classes cover the patterns of the test sources: {@code @Advice.Local} variables (single and multiple),
+ * writable {@code @Advice.Return}, {@code @Advice.FieldValue} and {@code @Advice.Argument} parameters, early returns
+ * and advice classes nested in other classes. In addition, already migrated advice classes are generated, which must
+ * be left untouched.
+ */
+public class AdviceCorpusGenerator {
+
+    public static class Config {
+        int fileCount = 1000;
+        double adviceRatio = 0.1;
+        int maxAdviceClassesPerFile = 3;
+        int methodSize = 10;
+        int nestingDepth = 1;
+        long seed = 42;
+
+        public Config fileCount(int fileCount) {
+            this.fileCount = fileCount;
+            return this;
+        }
+
+        /**
+         * @param adviceRatio the fraction of files which contain advice classes
+         */
+        public Config adviceRatio(double adviceRatio) {
+            this.adviceRatio = adviceRatio;
+            return this;
+        }
+
+        public Config maxAdviceClassesPerFile(int maxAdviceClassesPerFile) {
+            this.maxAdviceClassesPerFile = maxAdviceClassesPerFile;
+            return this;
+        }
+
+        /**
+         * @param methodSize the number of filler statements in every generated method
+         */
+        public Config methodSize(int methodSize) {
+            this.methodSize = methodSize;
+            return this;
+        }
+
+        /**
+         * @param nestingDepth the maximum number of classes advice classes are nested in, zero means top-level only
+         */
+        public Config nestingDepth(int nestingDepth) {
+            this.nestingDepth = nestingDepth;
+            return this;
+        }
+
+        public Config seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+    }
+
+    /**
+     * @param relativePath           the path of the file relative to the corpus root
+     * @param transformedAdviceCount the number of advice classes in the file which are expected to be transformed
+     */
+    public record GeneratedFile(String relativePath, String source, int transformedAdviceCount) {
+    }
+
+    private enum AdviceKind {
+        SINGLE_LOCAL,
+        MULTIPLE_LOCALS,
+        WRITTEN_RETURN,
+        WRITTEN_FIELD,
+        WRITTEN_ARGUMENT,
+        EARLY_RETURN,
+        ALREADY_MIGRATED
+    }
+
+    private final Config config;
+
+    public AdviceCorpusGenerator(Config config) {
+        this.config = config;
+    }
+
+    public List<GeneratedFile> generate() {
+        Random random = new Random(config.seed);
+        List<GeneratedFile> files = new ArrayList<>(config.fileCount);
+        for (int i = 0; i < config.fileCount; i++) {
+            files.add(generateFile(i, random));
+        }
+        return files;
+    }
+
+    /**
+     * Writes the corpus to the given directory.
+     *
+     * @return the generated files
+     */
+    public List<GeneratedFile> writeTo(Path rootDir) throws IOException {
+        List<GeneratedFile> files = generate();
+        for (GeneratedFile file : files) {
+            Path path = rootDir.resolve(file.relativePath());
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, file.source());
+        }
+        return files;
+    }
+
+    private GeneratedFile generateFile(int index, Random random) {
+        String packageName = "generated.module" + (index % 50);
+        String className = "Generated" + index;
+        String relativePath = packageName.replace('.', '/') + "/" + className + ".java";
+
+        SourceBuilder source = new SourceBuilder();
+        source.line("package " + packageName + ";");
+        source.line("");
+        int transformedAdviceCount = 0;
+        if (random.nextDouble() < config.adviceRatio) {
+            source.line("import net.bytebuddy.asm.Advice;");
+            source.line("import net.bytebuddy.asm.Advice.AssignReturned;");
+            source.line("");
+            source.open("public class " + className);
+            generateRegularMethods(source, random);
+            int adviceClassCount = 1 + random.nextInt(Math.max(1, config.maxAdviceClassesPerFile));
+            for (int i = 0; i < adviceClassCount; i++) {
+                AdviceKind kind = AdviceKind.values()[random.nextInt(AdviceKind.values().length)];
+                if (kind != AdviceKind.ALREADY_MIGRATED) {
+                    transformedAdviceCount++;
+                }
+                int depth = random.nextInt(config.nestingDepth + 1);
+                generateNestedAdvice(source, kind, className + "Advice" + i, depth, random);
+            }
+            source.close();
+        } else {
+            source.line("import java.util.ArrayList;");
+            source.line("import java.util.List;");
+            source.line("");
+            source.open("public class " + className);
+            source.line("private final List<String> values = new ArrayList<>();");
+            generateRegularMethods(source, random);
+            source.close();
+        }
+        return new GeneratedFile(relativePath, source.toString(), transformedAdviceCount);
+    }
+
+    private void generateRegularMethods(SourceBuilder source, Random random) {
+        int methodCount = 1 + random.nextInt(3);
+        for (int i = 0; i < methodCount; i++) {
+            source.line("");
+            source.open("public String helper" + i + "(String input)");
+            generateFiller(source, random);
+            source.line("return input;");
+            source.close();
+        }
+    }
+
+    private void generateNestedAdvice(SourceBuilder source, AdviceKind kind, String name, int depth, Random random) {
+        source.line("");
+        if (depth > 0) {
+            source.open("public static class " + name + "Holder");
+            generateNestedAdvice(source, kind, name, depth - 1, random);
+            source.close();
+            return;
+        }
+        source.open("public static class " + name);
+        switch (kind) {
+            case SINGLE_LOCAL -> generateSingleLocal(source, random);
+            case MULTIPLE_LOCALS -> generateMultipleLocals(source, random);
+            case WRITTEN_RETURN -> generateWrittenReturn(source, random);
+            case WRITTEN_FIELD -> generateWrittenField(source, random);
+            case WRITTEN_ARGUMENT -> generateWrittenArgument(source, random);
+            case EARLY_RETURN -> generateEarlyReturn(source, random);
+            case ALREADY_MIGRATED -> generateAlreadyMigrated(source, random);
+        }
+        source.close();
+    }
+
+    private void generateSingleLocal(SourceBuilder source, Random random) {
+        source.line("@Advice.OnMethodEnter(suppress = Throwable.class)");
+        source.open("public static void enter(@Advice.Argument(0) Object argument, @Advice.Local(\"startTime\") long startTime)");
+        generateFiller(source, random);
+        source.line("startTime = System.nanoTime();");
+        source.close();
+        source.line("");
+        source.line("@Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)");
+        source.open("public static void exit(@Advice.Thrown Throwable error, @Advice.Local(\"startTime\") long startTime)");
+        generateFiller(source, random);
+        source.line("System.out.println(System.nanoTime() - startTime);");
+        source.close();
+    }
+
+    private void generateMultipleLocals(SourceBuilder source, Random random) {
+        source.line("@Advice.OnMethodEnter(suppress = Throwable.class)");
+        source.open("public static void enter(@Advice.Argument(0) String argument, @Advice.Local(\"startTime\") long startTime, @Advice.Local(\"name\") String name)");
+        generateFiller(source, random);
+        source.line("startTime = System.nanoTime();");
+        source.line("name = \"call-\" + argument;");
+        source.close();
+        source.line("");
+        source.line("@Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)");
+        source.open("public static void exit(@Advice.Return(readOnly = false) String returnValue, @Advice.Local(\"startTime\") long startTime, @Advice.Local(\"name\") String name)");
+        generateFiller(source, random);
+        source.line("returnValue = name + (System.nanoTime() - startTime);");
+        source.close();
+    }
+
+    private void generateWrittenReturn(SourceBuilder source, Random random) {
+        source.line("@Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)");
+        source.open("public static void exit(@Advice.Return(readOnly = false) String returnValue, @Advice.Thrown Throwable error)");
+        generateFiller(source, random);
+        source.open("if (error != null)");
+        source.line("returnValue = \"error\";");
+        source.line("return;");
+        source.close();
+        source.line("returnValue = returnValue + \"suffix\";");
+        source.close();
+    }
+
+    private void generateWrittenField(SourceBuilder source, Random random) {
+        source.line("@Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)");
+        source.open("public static void exit(@Advice.FieldValue(value = \"counter\", readOnly = false) int counter)");
+        generateFiller(source, random);
+        source.line("counter = counter + 1;");
+        source.close();
+    }
+
+    private void generateWrittenArgument(SourceBuilder source, Random random) {
+        source.line("@Advice.OnMethodEnter(suppress = Throwable.class)");
+        source.open("public static void enter(@Advice.Argument(value = 0, readOnly = false) Runnable task)");
+        generateFiller(source, random);
+        source.line("task = wrap(task);");
+        source.close();
+        source.line("");
+        source.open("private static Runnable wrap(Runnable task)");
+        source.line("return task;");
+        source.close();
+    }
+
+    private void generateEarlyReturn(SourceBuilder source, Random random) {
+        source.line("@Advice.OnMethodEnter(suppress = Throwable.class)");
+        source.open("public static void enter(@Advice.Argument(0) String argument, @Advice.Local(\"context\") Object context)");
+        source.open("if (argument == null)");
+        source.line("return;");
+        source.close();
+        generateFiller(source, random);
+        source.line("context = argument;");
+        source.close();
+        source.line("");
+        source.line("@Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)");
+        source.open("public static void exit(@Advice.Local(\"context\") Object context)");
+        generateFiller(source, random);
+        source.open("if (context != null)");
+        source.line("System.out.println(context);");
+        source.close();
+        source.close();
+    }
+
+    private void generateAlreadyMigrated(SourceBuilder source, Random random) {
+        source.line("@AssignReturned.ToReturned");
+        source.line("@Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)");
+        source.open("public static String exit(@Advice.Return String returnValue)");
+        generateFiller(source, random);
+        source.line("return returnValue + \"suffix\";");
+        source.close();
+    }
+
+    private void generateFiller(SourceBuilder source, Random random) {
+        for (int i = 0; i < config.methodSize; i++) {
+            switch (random.nextInt(3)) {
+                case 0 -> source.line("int value" + i + " = " + random.nextInt(1000) + " * " + (i + 1) + ";");
+                case 1 -> source.line("String text" + i + " = String.valueOf(" + random.nextInt(1000) + ");");
+                default -> source.line("// filler comment " + random.nextInt(1000));
+            }
+        }
+    }
+
+    private static class SourceBuilder {
+        private final StringBuilder text = new StringBuilder();
+        private int indentation = 0;
+
+        void line(String line) {
+            if (!line.isEmpty()) {
+                text.append("    ".repeat(indentation)).append(line);
+            }
+            text.append('\n');
+        }
+
+        void open(String header) {
+            line(header + " {");
+            indentation++;
+        }
+
+        void close() {
+            indentation--;
+            line("}");
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdvicePrefilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void acceptsAdviceSources() throws Exception {
+        Path adviceSource = Paths.get(AdvicePrefilterTest.class.getResource("/NestedClass.java").toURI());
+        assertTrue(AdvicePrefilter.mayContainAdvice(adviceSource));
+    }
+
+    @Test
+    public void rejectsSourcesWithoutAdviceAnnotations() {
+        assertFalse(mayContainAdvice("import net.bytebuddy.matcher.ElementMatchers;\npublic class Foo {}"));
+        assertFalse(mayContainAdvice("public class Foo { @OnMethodEnter void enter() {} }"));
+        assertTrue(mayContainAdvice("import net.bytebuddy.asm.Advice;\npublic class Foo { @Advice.OnMethodExit void exit() {} }"));
+    }
+
+    @Test
+    public void memoryMapsLargeFiles() throws Exception {
+        Path largeFile = tempDir.resolve("Large.java");
+        String padding = "// padding\n".repeat(10_000);
+        Files.writeString(largeFile, "import net.bytebuddy.asm.Advice;\n" + padding + "@Advice.OnMethodEnter");
+        assertTrue(AdvicePrefilter.mayContainAdvice(largeFile));
+
+        Files.writeString(largeFile, "import net.bytebuddy.asm.Advice;\n" + padding);
+        assertFalse(AdvicePrefilter.mayContainAdvice(largeFile));
+    }
+
+    private static boolean mayContainAdvice(String source) {
+        return AdvicePrefilter.mayContainAdvice(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,59 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.google.common.cache.CacheStats;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdviceTypeSolverTest {
+
+    AdviceTypeSolver typeSolver = new AdviceTypeSolver();
+
+    @Test
+    public void resolvesAdviceAnnotations() {
+        SymbolReference<ResolvedReferenceTypeDeclaration> enter = typeSolver.tryToSolveType("net.bytebuddy.asm.Advice.OnMethodEnter");
+        assertTrue(enter.isSolved());
+        assertEquals("net.bytebuddy.asm.Advice.OnMethodEnter", enter.getCorrespondingDeclaration().getQualifiedName());
+
+        SymbolReference<ResolvedReferenceTypeDeclaration> toField = typeSolver.tryToSolveType("net.bytebuddy.asm.Advice.AssignReturned.ToFields.ToField");
+        assertTrue(toField.isSolved());
+    }
+
+    @Test
+    public void resolvesJdkTypes() {
+        SymbolReference<ResolvedReferenceTypeDeclaration> string = typeSolver.tryToSolveType("java.lang.String");
+        assertTrue(string.isSolved());
+        assertSame(string, typeSolver.tryToSolveType("java.lang.String"));
+    }
+
+    @Test
+    public void doesNotResolveOtherTypes() {
+        assertFalse(typeSolver.tryToSolveType("co.elastic.indytransformer.AdviceTypeSolver").isSolved());
+        assertFalse(typeSolver.tryToSolveType("java.lang.DoesNotExist").isSolved());
+        assertFalse(typeSolver.tryToSolveType("java.lang.DoesNotExist").isSolved());
+        assertFalse(typeSolver.tryToSolveType("net.bytebuddy.ByteBuddy").isSolved());
+    }
+
+    @Test
+    public void boundsJdkTypeCache() {
+        AdviceTypeSolver boundedSolver = new AdviceTypeSolver(2);
+        for (String name : new String[]{"java.lang.String", "java.lang.DoesNotExist", "java.util.List", "java.util.Map"}) {
+            boundedSolver.tryToSolveType(name);
+        }
+        assertTrue(boundedSolver.tryToSolveType("java.util.Map").isSolved());
+        assertTrue(boundedSolver.tryToSolveType("java.lang.String").isSolved());
+
+        CacheStats stats = boundedSolver.cacheStats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(5, stats.missCount());
+        assertEquals(3, stats.evictionCount());
+        // the advice model is not affected by evictions
+        assertTrue(boundedSolver.tryToSolveType("net.bytebuddy.asm.Advice.OnMethodEnter").isSolved());
+        assertEquals(5, boundedSolver.cacheStats().missCount());
+    }
+}
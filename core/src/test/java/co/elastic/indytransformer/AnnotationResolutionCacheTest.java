@@ -0,0 +1,59 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AnnotationResolutionCacheTest {
+
+    TypeSolver typeSolver = new ReflectionTypeSolver(false);
+
+    @Test
+    public void resolvesBytebuddyImports() {
+        List<AnnotationExpr> annotations = parseAnnotations("""
+                import net.bytebuddy.asm.Advice;
+                import net.bytebuddy.asm.Advice.AssignReturned;
+                import net.bytebuddy.asm.Advice.OnMethodExit;
+                public class Foo {
+                    @Advice.OnMethodEnter @AssignReturned.ToReturned void enter() {}
+                    @OnMethodExit @Deprecated void exit() {}
+                }
+                """);
+        assertEquals(Optional.of("net.bytebuddy.asm.Advice.OnMethodEnter"), resolve(annotations.get(0)));
+        assertEquals(Optional.of("net.bytebuddy.asm.Advice.AssignReturned.ToReturned"), resolve(annotations.get(1)));
+        assertEquals(Optional.of("net.bytebuddy.asm.Advice.OnMethodExit"), resolve(annotations.get(2)));
+        assertEquals(Optional.of("java.lang.Deprecated"), resolve(annotations.get(3)));
+    }
+
+    @Test
+    public void respectsShadowingTypeDeclarations() {
+        List<AnnotationExpr> annotations = parseAnnotations("""
+                import net.bytebuddy.asm.Advice;
+                public class Foo {
+                    @Advice.OnMethodEnter void enter() {}
+                    @interface Advice { @interface OnMethodEnter {} }
+                }
+                """);
+        assertEquals(Optional.of("Foo.Advice.OnMethodEnter"), resolve(annotations.get(0)));
+    }
+
+    private List<AnnotationExpr> parseAnnotations(String source) {
+        CompilationUnit cu = StaticJavaParser.parse(source);
+        return cu.findAll(AnnotationExpr.class);
+    }
+
+    private Optional<String> resolve(AnnotationExpr annotation) {
+        Optional<String> first = AnnotationResolutionCache.resolveQualifiedName(annotation, typeSolver);
+        // the second lookup is served from the cache and must yield the same result
+        assertEquals(first, AnnotationResolutionCache.resolveQualifiedName(annotation, typeSolver));
+        return first;
+    }
+}
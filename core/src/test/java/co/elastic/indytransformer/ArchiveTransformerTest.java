@@ -0,0 +1,196 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ArchiveTransformerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void transformsSourcesWithinArchive() throws Exception {
+        Path sourceDir = MainTest.copyTestSources(tempDir.resolve("sources"));
+        List<Path> sources;
+        try (Stream<Path> files = Files.list(sourceDir)) {
+            sources = files.sorted().toList();
+        }
+        byte[] binary = new byte[100_000];
+        new Random(42).nextBytes(binary);
+        byte[] compressibleBinary = new byte[100_000];
+
+        Path jar = tempDir.resolve("advice-sources.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+            zip.setComment("sources");
+            addDeflated(zip, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            // a different compression level than the one used for transformed entries, so that recompression would be visible
+            zip.setLevel(Deflater.BEST_SPEED);
+            addDeflated(zip, "zeros.bin", compressibleBinary);
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            for (int i = 0; i < sources.size(); i++) {
+                byte[] content = Files.readAllBytes(sources.get(i));
+                String name = "co/elastic/" + sources.get(i).getFileName();
+                if (i % 2 == 0) {
+                    addStored(zip, name, content);
+                } else {
+                    addDeflated(zip, name, content);
+                }
+            }
+            addStored(zip, "random.bin", binary);
+            addDeflated(zip, "co/elastic/NoAdvice.java", "public class NoAdvice {}".getBytes(StandardCharsets.UTF_8));
+        }
+        Map<String, Long> compressedSizesBefore = compressedSizes(jar);
+
+        Main.main(new String[]{sourceDir.toString()});
+        Main.main(new String[]{jar.toString()});
+
+        Map<String, byte[]> entries = readEntries(jar);
+        assertEquals(sources.size() + 4, entries.size());
+        for (Path source : sources) {
+            String name = "co/elastic/" + source.getFileName();
+            assertArrayEquals(Files.readAllBytes(source), entries.get(name), name);
+        }
+        assertArrayEquals(binary, entries.get("random.bin"));
+        assertArrayEquals(compressibleBinary, entries.get("zeros.bin"));
+
+        Map<String, Long> compressedSizesAfter = compressedSizes(jar);
+        assertEquals(compressedSizesBefore.get("zeros.bin"), compressedSizesAfter.get("zeros.bin"));
+        assertEquals(compressedSizesBefore.get("co/elastic/NoAdvice.java"), compressedSizesAfter.get("co/elastic/NoAdvice.java"));
+        assertNotEquals(compressedSizesBefore.get("co/elastic/NestedClass.java"), compressedSizesAfter.get("co/elastic/NestedClass.java"));
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            assertEquals("sources", zipFile.getComment());
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(), files.filter(file -> file.toString().endsWith(".tmp")).toList());
+        }
+    }
+
+    @Test
+    public void keepsArchiveWithoutAdvice() throws Exception {
+        Path zip = tempDir.resolve("plain.zip");
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(zip))) {
+            addDeflated(output, "Foo.java", "public class Foo {}".getBytes(StandardCharsets.UTF_8));
+            addStored(output, "Bar.java", "import net.bytebuddy.asm.Advice; public class Bar { @Advice.OnMethodEnter static void enter(@Advice.Argument(0) String arg) {} }".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] before = Files.readAllBytes(zip);
+
+        List<TransformPipeline.FileResult> results = new ArrayList<>();
+        long found = new ArchiveTransformer(new AdviceTransformer(), true, TransformerStats.DISABLED).transform(zip, results::add);
+
+        assertEquals(2, found);
+        assertEquals(List.of(TransformOutcome.NO_ADVICE, TransformOutcome.UNCHANGED),
+                results.stream().map(TransformPipeline.FileResult::outcome).toList());
+        assertEquals(List.of(zip.resolve("Foo.java"), zip.resolve("Bar.java")),
+                results.stream().map(TransformPipeline.FileResult::file).toList());
+        assertArrayEquals(before, Files.readAllBytes(zip));
+    }
+
+    @Test
+    public void keepsPermissionsAndSymbolicLinks() throws Exception {
+        assumeTrue(Files.getFileStore(tempDir).supportsFileAttributeView(PosixFileAttributeView.class));
+        Path sourceDir = MainTest.copyTestSources(tempDir.resolve("sources"));
+        Path jar = tempDir.resolve("archives/advice-sources.jar");
+        Files.createDirectories(jar.getParent());
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+            addDeflated(zip, "NestedClass.java", Files.readAllBytes(sourceDir.resolve("NestedClass.java")));
+        }
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(jar, permissions);
+        Path link = Files.createSymbolicLink(tempDir.resolve("link.jar"), jar);
+        byte[] before = Files.readAllBytes(jar);
+
+        List<TransformPipeline.FileResult> results = new ArrayList<>();
+        new ArchiveTransformer(new AdviceTransformer(), true, TransformerStats.DISABLED).transform(link, results::add);
+
+        assertEquals(TransformOutcome.TRANSFORMED, results.get(0).outcome());
+        assertTrue(Files.isSymbolicLink(link));
+        assertFalse(Arrays.equals(before, Files.readAllBytes(jar)));
+        assertEquals(permissions, Files.getPosixFilePermissions(jar));
+    }
+
+    @Test
+    public void rejectsInvalidArchives() throws Exception {
+        Path notAnArchive = tempDir.resolve("broken.jar");
+        Files.writeString(notAnArchive, "not a zip archive");
+        ArchiveTransformer transformer = new ArchiveTransformer(new AdviceTransformer(), true, TransformerStats.DISABLED);
+        assertThrows(IOException.class, () -> transformer.transform(notAnArchive, result -> {
+        }));
+    }
+
+    private static void addDeflated(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static void addStored(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    /**
+     * Reads the entries using their local headers, which must be consistent with the central directory read by {@link ZipFile}.
+     */
+    private static Map<String, byte[]> readEntries(Path archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(new ArrayList<>(entries.keySet()), zipFile.stream().map(ZipEntry::getName).toList());
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                try (var input = zipFile.getInputStream(zipFile.getEntry(entry.getKey()))) {
+                    assertArrayEquals(entry.getValue(), input.readAllBytes(), entry.getKey());
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, Long> compressedSizes(Path archive) throws IOException {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            zipFile.stream().forEach(entry -> sizes.put(entry.getName(), entry.getCompressedSize()));
+        }
+        return sizes;
+    }
+}
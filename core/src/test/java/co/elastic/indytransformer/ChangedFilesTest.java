@@ -0,0 +1,68 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ChangedFilesTest {
+
+    @TempDir
+    Path repoDir;
+
+    @Test
+    public void listsJavaFilesChangedSinceRevision() throws Exception {
+        Path moduleDir = Files.createDirectories(repoDir.resolve("module"));
+        Files.writeString(moduleDir.resolve("Unchanged.java"), "class Unchanged {}");
+        Files.writeString(moduleDir.resolve("Modified.java"), "class Modified {}");
+        Files.writeString(moduleDir.resolve("Deleted.java"), "class Deleted {}");
+        git("init", "-q");
+        git("add", ".");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "initial");
+
+        Files.writeString(moduleDir.resolve("Modified.java"), "class Modified { }");
+        Files.writeString(moduleDir.resolve("Added.java"), "class Added {}");
+        Files.writeString(moduleDir.resolve("notes.txt"), "not java");
+        Files.delete(moduleDir.resolve("Deleted.java"));
+        git("add", ".");
+
+        List<Path> changed = ChangedFiles.fromGitDiff(moduleDir, "HEAD");
+        assertEquals(List.of(moduleDir.resolve("Added.java"), moduleDir.resolve("Modified.java")), changed);
+    }
+
+    @Test
+    public void includesUntrackedFilesForSingleRevision() throws Exception {
+        Path moduleDir = Files.createDirectories(repoDir.resolve("module"));
+        Files.writeString(moduleDir.resolve("Committed.java"), "class Committed {}");
+        Files.writeString(repoDir.resolve(".gitignore"), "Ignored.java\n");
+        git("init", "-q");
+        git("add", ".");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "initial");
+
+        Files.writeString(moduleDir.resolve("Untracked.java"), "class Untracked {}");
+        Files.writeString(moduleDir.resolve("Ignored.java"), "class Ignored {}");
+        Files.writeString(repoDir.resolve("Outside.java"), "class Outside {}");
+
+        assertEquals(List.of(moduleDir.resolve("Untracked.java")), ChangedFiles.fromGitDiff(moduleDir, "HEAD"));
+        assertEquals(List.of(), ChangedFiles.fromGitDiff(moduleDir, "HEAD..HEAD"));
+    }
+
+    @Test
+    public void filtersExplicitPaths() throws Exception {
+        Files.writeString(repoDir.resolve("Existing.java"), "class Existing {}");
+        List<Path> files = ChangedFiles.fromPaths(repoDir, List.of("Existing.java", "Missing.java", "README.md", " Existing.java "));
+        assertEquals(List.of(repoDir.resolve("Existing.java")), files);
+    }
+
+    private void git(String... args) throws Exception {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command).directory(repoDir.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}
@@ -0,0 +1,73 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.StaticJavaParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Transforms a generated corpus and checks the results, the total runtime and the peak heap usage.
+ * The corpus size and the limits can be adjusted using the {@code corpus.fileCount}, {@code corpus.maxSeconds}
+ * and {@code corpus.maxHeapMb} system properties.
+ */
+public class CorpusScaleTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void generatorIsDeterministic() {
+        AdviceCorpusGenerator.Config config = new AdviceCorpusGenerator.Config().fileCount(50).adviceRatio(0.5).seed(7);
+        assertEquals(new AdviceCorpusGenerator(config).generate(), new AdviceCorpusGenerator(config).generate());
+    }
+
+    @Test
+    public void transformsGeneratedCorpus() throws Exception {
+        int fileCount = Integer.getInteger("corpus.fileCount", 300);
+        Duration maxDuration = Duration.ofSeconds(Long.getLong("corpus.maxSeconds", 300));
+        long maxHeapBytes = Long.getLong("corpus.maxHeapMb", 2048) * 1024 * 1024;
+
+        AdviceCorpusGenerator.Config config = new AdviceCorpusGenerator.Config()
+                .fileCount(fileCount)
+                .adviceRatio(0.2)
+                .methodSize(10)
+                .nestingDepth(2);
+        List<AdviceCorpusGenerator.GeneratedFile> files = new AdviceCorpusGenerator(config).writeTo(tempDir);
+
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long start = System.nanoTime();
+        Main.main(new String[]{tempDir.toString()});
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        long peakHeapBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        System.out.println("Transformed " + fileCount + " generated files in " + duration.toMillis() + " ms, peak heap usage " + (peakHeapBytes / 1024 / 1024) + " MB");
+
+        for (AdviceCorpusGenerator.GeneratedFile file : files) {
+            String content = Files.readString(tempDir.resolve(file.relativePath()));
+            if (file.transformedAdviceCount() > 0) {
+                assertNotEquals(file.source(), content, file.relativePath());
+                assertFalse(content.contains("readOnly = false"), file.relativePath());
+                assertFalse(content.contains("@Advice.Local"), file.relativePath());
+                StaticJavaParser.parse(content);
+            } else {
+                assertEquals(file.source(), content, file.relativePath());
+            }
+        }
+        assertTrue(duration.compareTo(maxDuration) < 0, "Transformation took " + duration);
+        assertTrue(peakHeapBytes < maxHeapBytes, "Peak heap usage was " + peakHeapBytes + " bytes");
+    }
+}
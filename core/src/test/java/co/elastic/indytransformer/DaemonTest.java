@@ -0,0 +1,140 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DaemonTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void transformsSourceText() throws Exception {
+        Daemon daemon = new Daemon(true);
+        String input = ExpectedOutputTest.readResource("/SingleLocalAdvice.java");
+        String expected = ExpectedOutputTest.readResource("/expected/SingleLocalAdvice.java");
+
+        Map<?, ?> response = request(daemon, "{\"id\": 1, \"source\": " + Json.quote(input) + "}");
+        assertEquals(1L, response.get("id"));
+        assertEquals("TRANSFORMED", response.get("outcome"));
+        assertEquals(expected, response.get("source"));
+
+        response = request(daemon, "{\"id\": \"second\", \"source\": " + Json.quote(expected) + "}");
+        assertEquals("second", response.get("id"));
+        assertEquals("UNCHANGED", response.get("outcome"));
+        assertFalse(response.containsKey("source"));
+
+        response = request(daemon, "{\"id\": 3, \"source\": \"class NoAdvice {}\"}");
+        assertEquals("NO_ADVICE", response.get("outcome"));
+    }
+
+    @Test
+    public void transformsFilesInPlace() throws Exception {
+        Path file = tempDir.resolve("SingleLocalAdvice.java");
+        Files.writeString(file, ExpectedOutputTest.readResource("/SingleLocalAdvice.java"));
+
+        Map<?, ?> response = request(new Daemon(true), "{\"id\": 1, \"path\": " + Json.quote(file.toString()) + "}");
+        assertEquals("TRANSFORMED", response.get("outcome"));
+        assertEquals(ExpectedOutputTest.readResource("/expected/SingleLocalAdvice.java"), Files.readString(file));
+    }
+
+    @Test
+    public void reportsErrors() {
+        Daemon daemon = new Daemon(true);
+        Map<?, ?> response = request(daemon, "not json");
+        assertNull(response.get("id"));
+        assertTrue(response.containsKey("error"));
+
+        response = request(daemon, "{\"id\": 2, \"op\": \"unknown\"}");
+        assertEquals(2L, response.get("id"));
+        assertEquals("Unknown op: unknown", response.get("error"));
+
+        response = request(daemon, "{\"id\": 3, \"path\": " + Json.quote(tempDir.resolve("Missing.java").toString()) + "}");
+        assertTrue(response.containsKey("error"));
+    }
+
+    @Test
+    public void reportsErrorsThrownWhileTransforming() {
+        Daemon daemon = new Daemon(false);
+        String source = "class DeeplyNested { int value = " + "(".repeat(100_000) + "1" + ")".repeat(100_000) + "; }";
+        Map<?, ?> response = request(daemon, "{\"id\": 1, \"source\": " + Json.quote(source) + "}");
+        assertEquals(1L, response.get("id"));
+        assertTrue(response.containsKey("error"));
+
+        // the daemon keeps serving requests
+        assertEquals(true, request(daemon, "{\"id\": 2, \"op\": \"ping\"}").get("ok"));
+    }
+
+    @Test
+    public void servesUntilShutdown() throws Exception {
+        StringWriter out = new StringWriter();
+        new Daemon(true).serve(new BufferedReader(new StringReader("{\"id\": 1, \"op\": \"ping\"}\n\n{\"id\": 2, \"op\": \"shutdown\"}\n{\"id\": 3, \"op\": \"ping\"}\n")), out);
+        assertEquals("{\"id\": 1, \"ok\": true}\n{\"id\": 2, \"ok\": true}\n", out.toString());
+    }
+
+    @Test
+    public void servesUnixDomainSocket() throws Exception {
+        Path socket = tempDir.resolve("daemon.sock");
+        Daemon daemon = new Daemon(true);
+        CompletableFuture<Void> server = CompletableFuture.runAsync(() -> {
+            try {
+                daemon.serveSocket(socket);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try (SocketChannel channel = connect(socket)) {
+            var writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            writer.write("{\"id\": 1, \"op\": \"ping\"}\n");
+            writer.flush();
+            assertEquals("{\"id\": 1, \"ok\": true}", reader.readLine());
+            writer.write("{\"id\": 2, \"op\": \"shutdown\"}\n");
+            writer.flush();
+            assertEquals("{\"id\": 2, \"ok\": true}", reader.readLine());
+        }
+        server.get(10, TimeUnit.SECONDS);
+        assertFalse(Files.exists(socket));
+    }
+
+    private static SocketChannel connect(Path socket) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket));
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static Map<?, ?> request(Daemon daemon, String request) {
+        return (Map<?, ?>) Json.parse(daemon.handle(request));
+    }
+}
@@ -0,0 +1,52 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the transformation result of every test source with the expected output in the {@code expected} directory.
+ */
+public class ExpectedOutputTest {
+
+    static final String[] TEST_SOURCES = {
+            "ComplexEnter.java",
+            "EnterAndAssignmentsCombined.java",
+            "EnterAndLocalsCombined.java",
+            "NestedClass.java",
+            "PreserveOrderInOptimizedReturns.java",
+            "ReadWriteReturn.java",
+            "SingleLocalAdvice.java",
+            "WrapArgumentAdvice.java",
+            "WriteFieldAndReturn.java",
+            "WriteOnlyReturn.java"
+    };
+
+    AdviceTransformer transformer = new AdviceTransformer();
+
+    @TestFactory
+    public Stream<DynamicTest> transformedSourcesMatchExpectedOutput() {
+        return Stream.of(TEST_SOURCES)
+                .map(name -> DynamicTest.dynamicTest(name, () -> {
+                    String expected = readResource("/expected/" + name);
+                    try (InputStream source = ExpectedOutputTest.class.getResourceAsStream("/" + name)) {
+                        CompilationUnit cu = transformer.load(source);
+                        transformer.transform(cu);
+                        assertEquals(expected, transformer.print(cu));
+                    }
+                }));
+    }
+
+    static String readResource(String name) throws IOException {
+        try (InputStream stream = ExpectedOutputTest.class.getResourceAsStream(name)) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileCostModelTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void estimatesByRecordedTimingOrSize() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        Path recorded = tempDir.resolve("Foo.java");
+        Path unknown = tempDir.resolve("Bar.java");
+        Files.writeString(recorded, "public class Foo {}");
+        Files.writeString(unknown, "public class Bar { int field; }");
+
+        FileCostModel model = FileCostModel.load(cacheDir);
+        model.record(recorded, 100, 5000);
+        model.save();
+
+        FileCostModel reloaded = FileCostModel.load(cacheDir);
+        assertEquals(5000, reloaded.estimate(recorded, -1));
+        assertEquals(5000, reloaded.estimate(recorded, 100));
+        // the file changed, estimate it by its size using the average time per byte of the recorded files
+        assertEquals(10000, reloaded.estimate(recorded, 200));
+        assertEquals(Files.size(unknown) * 50, reloaded.estimate(unknown, -1));
+        assertEquals(0, reloaded.estimate(tempDir.resolve("Missing.java"), -1));
+    }
+
+    @Test
+    public void estimatesWithoutAccessingTheFile() throws Exception {
+        FileCostModel model = FileCostModel.load(tempDir.resolve("cache"));
+        assertEquals(0, model.estimate(tempDir.resolve("Missing.java")));
+        model.record(tempDir.resolve("Foo.java"), 100, 5000);
+        model.record(tempDir.resolve("Bar.java"), 100, 1000);
+
+        assertEquals(5000, model.estimate(tempDir.resolve("Foo.java")));
+        // the average time per file
+        assertEquals(3000, model.estimate(tempDir.resolve("Missing.java")));
+    }
+
+    @Test
+    public void dropsTimingsOfDeletedFilesWhenSaving() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        Path kept = Files.writeString(tempDir.resolve("Kept.java"), "public class Kept {}");
+        Path deleted = Files.writeString(tempDir.resolve("Deleted.java"), "public class Deleted {}");
+        FileCostModel model = FileCostModel.load(cacheDir);
+        model.record(kept, 100, 1000);
+        model.record(deleted, 100, 5000);
+        model.save();
+
+        Files.delete(deleted);
+        // neither file is part of this run, e.g. because only changed files are processed
+        FileCostModel.load(cacheDir).save();
+
+        FileCostModel reloaded = FileCostModel.load(cacheDir);
+        assertEquals(1000, reloaded.estimate(kept));
+        // estimated by the average of the remaining timings
+        assertEquals(1000, reloaded.estimate(deleted));
+    }
+
+    @Test
+    public void incrementalRunRecordsTimings() throws Exception {
+        Path sourceDir = MainTest.copyTestSources(tempDir.resolve("sources"));
+        Path cacheDir = tempDir.resolve("cache");
+        Main.main(new String[]{sourceDir.toString(), "--incremental", "--cache-dir", cacheDir.toString()});
+
+        FileCostModel model = FileCostModel.load(cacheDir);
+        Path nestedClass = sourceDir.resolve("NestedClass.java");
+        assertTrue(model.estimate(nestedClass, -1) > 0);
+    }
+}
@@ -0,0 +1,120 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void detectsModifiedFiles() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        Path file = tempDir.resolve("Foo.java");
+        Path otherFile = tempDir.resolve("Bar.java");
+        Files.writeString(file, "public class Foo {}");
+        Files.writeString(otherFile, "public class Bar {}");
+
+        IncrementalIndex index = IncrementalIndex.load(cacheDir);
+        assertFalse(index.isUpToDate(file));
+        record(index, file, TransformOutcome.UNCHANGED);
+        record(index, otherFile, TransformOutcome.NO_ADVICE);
+        index.save();
+
+        IncrementalIndex reloaded = IncrementalIndex.load(cacheDir);
+        assertTrue(reloaded.isUpToDate(file));
+        assertTrue(reloaded.isUpToDate(otherFile));
+
+        Files.writeString(file, "public class Foo { }");
+        assertFalse(reloaded.isUpToDate(file));
+        // same size, but different content
+        Files.writeString(otherFile, "public class Baz {}");
+        assertFalse(reloaded.isUpToDate(otherFile));
+    }
+
+    @Test
+    public void discardsIndexOfOtherVersionOrOptions() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        Path file = tempDir.resolve("Foo.java");
+        Files.writeString(file, "public class Foo {}");
+        IncrementalIndex index = IncrementalIndex.load(cacheDir, "symbolIndex=false");
+        record(index, file, TransformOutcome.UNCHANGED);
+        index.save();
+
+        assertTrue(IncrementalIndex.load(cacheDir, "symbolIndex=false").isUpToDate(file));
+        assertFalse(IncrementalIndex.load(cacheDir, "symbolIndex=true").isUpToDate(file));
+
+        Path indexFile = cacheDir.resolve("incremental-index.tsv");
+        List<String> lines = new ArrayList<>(Files.readAllLines(indexFile));
+        assertTrue(lines.get(0).contains(ResultCache.toolVersion()));
+        lines.set(0, lines.get(0).replace(ResultCache.toolVersion(), "0.1"));
+        Files.write(indexFile, lines);
+        assertFalse(IncrementalIndex.load(cacheDir, "symbolIndex=false").isUpToDate(file));
+    }
+
+    @Test
+    public void prunesFilesNotSeenDuringRun() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        Path kept = tempDir.resolve("Foo.java");
+        Path deleted = tempDir.resolve("Bar.java");
+        Files.writeString(kept, "public class Foo {}");
+        Files.writeString(deleted, "public class Bar {}");
+        IncrementalIndex index = IncrementalIndex.load(cacheDir);
+        record(index, kept, TransformOutcome.UNCHANGED);
+        record(index, deleted, TransformOutcome.UNCHANGED);
+        index.save();
+
+        Files.delete(deleted);
+        IncrementalIndex reloaded = IncrementalIndex.load(cacheDir);
+        assertTrue(reloaded.isUpToDate(kept));
+        assertEquals(1, reloaded.pruneUnseen());
+        reloaded.save();
+
+        Files.writeString(deleted, "public class Bar {}");
+        assertFalse(IncrementalIndex.load(cacheDir).isUpToDate(deleted));
+    }
+
+    @Test
+    public void detectsModificationsWhileProcessing() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        Path file = tempDir.resolve("Foo.java");
+        Files.writeString(file, "public class Foo {}");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        byte[] processed = Files.readAllBytes(file);
+
+        // modified after the file has been read, but before its outcome is recorded
+        Files.writeString(file, "public class Baz {}");
+        IncrementalIndex index = IncrementalIndex.load(cacheDir);
+        index.record(file, TransformOutcome.UNCHANGED, lastModified, ByteBuffer.wrap(processed));
+        index.save();
+
+        assertFalse(IncrementalIndex.load(cacheDir).isUpToDate(file));
+    }
+
+    @Test
+    public void incrementalRunSkipsProcessedFiles() throws Exception {
+        Path sourceDir = MainTest.copyTestSources(tempDir.resolve("sources"));
+        Path cacheDir = tempDir.resolve("cache");
+        Main.main(new String[]{sourceDir.toString(), "--incremental", "--cache-dir", cacheDir.toString()});
+
+        IncrementalIndex index = IncrementalIndex.load(cacheDir, "symbolIndex=false");
+        assertTrue(index.isUpToDate(sourceDir.resolve("NestedClass.java")));
+    }
+
+    private static void record(IncrementalIndex index, Path file, TransformOutcome outcome) throws Exception {
+        index.record(file, outcome, Files.getLastModifiedTime(file).toMillis(), ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+}
@@ -0,0 +1,40 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonTest {
+
+    @Test
+    public void parsesValues() {
+        Object parsed = Json.parse(" {\"id\": 12, \"ratio\": -1.5e2, \"flags\": [true, false, null], \"text\": \"a\\\"b\\\\c\\n\\u00e4\", \"empty\": {}} ");
+        assertEquals(Map.of(
+                "id", 12L,
+                "ratio", -150.0,
+                "flags", java.util.Arrays.asList(true, false, null),
+                "text", "a\"b\\c\nä",
+                "empty", Map.of()
+        ), parsed);
+        assertEquals(List.of(), Json.parse("[]"));
+    }
+
+    @Test
+    public void rejectsInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"id\": }"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"id\": 1"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("\"unterminated"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("{} trailing"));
+    }
+
+    @Test
+    public void escapesStrings() {
+        assertEquals("C:\\\\dir\\\\\\\"quoted\\\"\\n", Json.escape("C:\\dir\\\"quoted\"\n"));
+        String text = "line\r\n\ttab \"quote\" \u0001";
+        assertEquals(text, Json.parse(Json.quote(text)));
+    }
+}
@@ -0,0 +1,68 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MainTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void parallelOutputMatchesSequentialOutput() throws Exception {
+        Path sequentialDir = copyTestSources(tempDir.resolve("sequential"));
+        Path parallelDir = copyTestSources(tempDir.resolve("parallel"));
+
+        Main.main(new String[]{sequentialDir.toString(), "--threads", "1"});
+        Main.main(new String[]{parallelDir.toString(), "--threads", "4"});
+
+        List<Path> files = listJavaFiles(sequentialDir);
+        assertFalse(files.isEmpty());
+        for (Path file : files) {
+            Path relative = sequentialDir.relativize(file);
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(parallelDir.resolve(relative)), relative.toString());
+        }
+    }
+
+    @Test
+    public void symbolIndexDoesNotChangeOutput() throws Exception {
+        Path plainDir = copyTestSources(tempDir.resolve("plain"));
+        Path indexedDir = copyTestSources(tempDir.resolve("indexed"));
+
+        Main.main(new String[]{plainDir.toString()});
+        Main.main(new String[]{indexedDir.toString(), "--symbol-index"});
+
+        assertTrue(SymbolIndex.load(indexedDir.resolve(Main.DEFAULT_CACHE_DIR)).orElseThrow().size() > 0);
+        for (Path file : listJavaFiles(plainDir)) {
+            Path relative = plainDir.relativize(file);
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(indexedDir.resolve(relative)), relative.toString());
+        }
+    }
+
+    static Path copyTestSources(Path targetDir) throws IOException, URISyntaxException {
+        Path resourcesDir = Paths.get(MainTest.class.getResource("/NestedClass.java").toURI()).getParent();
+        Files.createDirectories(targetDir);
+        for (Path source : listJavaFiles(resourcesDir)) {
+            Files.copy(source, targetDir.resolve(source.getFileName()));
+        }
+        return targetDir;
+    }
+
+    private static List<Path> listJavaFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".java")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MethodIndexTest {
+
+    private static final String SOURCE = """
+            public class Sample {
+                private int shadowed;
+                public static int method(int used, int written, int shadowed) {
+                    written = used + 1;
+                    Runnable task = () -> { return; };
+                    Object anonymous = new Object() {
+                        int shadowed = 0;
+                        public String toString() {
+                            return String.valueOf(shadowed);
+                        }
+                    };
+                    if (used > 0) {
+                        return used;
+                    }
+                    return 0;
+                }
+            }
+            """;
+
+    private static final String USE_BEFORE_DECLARATION_SOURCE = """
+            public class Sample {
+                private int field;
+                public static int method() {
+                    System.out.println(field);
+                    {
+                        int block = 1;
+                        System.out.println(block);
+                    }
+                    int field = 2;
+                    int block = 3;
+                    int declared = 4, initialized = declared;
+                    return 0;
+                }
+            }
+            """;
+
+    private MethodDeclaration parseMethod() {
+        return parseMethod(SOURCE);
+    }
+
+    private static MethodDeclaration parseMethod(String source) {
+        JavaParser parser = new JavaParser(new ParserConfiguration().setSymbolResolver(new JavaSymbolSolver(AdviceTypeSolver.getShared())));
+        CompilationUnit compilationUnit = parser.parse(source).getResult().get();
+        return compilationUnit.findFirst(MethodDeclaration.class, method -> method.getNameAsString().equals("method")).get();
+    }
+
+    @Test
+    public void findsReadReferences() {
+        MethodDeclaration method = parseMethod();
+        MethodIndex index = MethodIndex.of(method, AdviceTypeSolver.getShared());
+
+        assertTrue(index.isUsed(method.getParameterByName("used").get()));
+        assertFalse(index.isUsed(method.getParameterByName("written").get()));
+        // the only reference resolves to the field of the anonymous class
+        assertFalse(index.isUsed(method.getParameterByName("shadowed").get()));
+    }
+
+    @Test
+    public void ignoresReferencesPrecedingTheDeclaration() {
+        MethodDeclaration method = parseMethod(USE_BEFORE_DECLARATION_SOURCE);
+        MethodIndex index = MethodIndex.of(method, AdviceTypeSolver.getShared());
+
+        VariableDeclarator field = variable(method, "field", 0);
+        VariableDeclarator block = variable(method, "block", 1);
+        // the preceding references resolve to the field and to the variable of the preceding block
+        assertFalse(index.isUsed(field));
+        assertFalse(index.isUsed(block));
+        assertTrue(index.isUsed(variable(method, "block", 0)));
+        // references within the declaring statement are resolved using the symbol solver
+        assertTrue(index.isUsed(variable(method, "declared", 0)));
+        assertFalse(index.isUsed(variable(method, "initialized", 0)));
+
+        method.getBody().get().addStatement(0, new ExpressionStmt(new NameExpr("block")));
+        assertFalse(index.isUsed(block));
+        int returnPosition = method.getBody().get().getStatements().size() - 1;
+        method.getBody().get().addStatement(returnPosition, new ExpressionStmt(new NameExpr("block")));
+        assertTrue(index.isUsed(block));
+        assertFalse(index.isUsed(field));
+    }
+
+    @Test
+    public void ignoresReturnsOfLambdasAndNestedClasses() {
+        MethodDeclaration method = parseMethod();
+        assertEquals(2, MethodIndex.of(method, AdviceTypeSolver.getShared()).getReturns().size());
+    }
+
+    @Test
+    public void tracksModifications() {
+        MethodDeclaration method = parseMethod();
+        MethodIndex index = MethodIndex.of(method, AdviceTypeSolver.getShared());
+        Parameter used = method.getParameterByName("used").get();
+        Parameter written = method.getParameterByName("written").get();
+
+        index.replaceReferences(used, new FieldAccessExpr(new NameExpr("locals"), "used"));
+        assertFalse(index.isUsed(used));
+        assertFalse(method.toString().contains("(used"));
+
+        method.getBody().get().addStatement(0, new ExpressionStmt(new NameExpr("written")));
+        assertTrue(index.isUsed(written));
+
+        method.getBody().get().getStatement(0).remove();
+        assertFalse(index.isUsed(written));
+
+        ReturnStmt lastReturn = method.getBody().get().addAndGetStatement(new ReturnStmt(new NameExpr("written")));
+        assertEquals(3, index.getReturns().size());
+        assertTrue(index.isUsed(written));
+        lastReturn.remove();
+        assertEquals(2, index.getReturns().size());
+
+        MethodIndex.discard(method);
+        method.getBody().get().addStatement(new ReturnStmt());
+        assertEquals(2, index.getReturns().size());
+    }
+
+    /**
+     * @return the given occurrence of a variable declared with the given name, in the order of the source
+     */
+    private static VariableDeclarator variable(MethodDeclaration method, String name, int occurrence) {
+        return method.findAll(VariableDeclarator.class, variable -> variable.getNameAsString().equals(name)).get(occurrence);
+    }
+}
@@ -0,0 +1,161 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatchOutputTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void patchCanBeAppliedWithGit() throws Exception {
+        Path transformedDir = MainTest.copyTestSources(tempDir.resolve("transformed"));
+        Path patchedDir = MainTest.copyTestSources(tempDir.resolve("patched"));
+        Path patch = tempDir.resolve("changes.patch");
+
+        Main.main(new String[]{transformedDir.toString()});
+        Main.main(new String[]{patchedDir.toString(), "--patch", patch.toString()});
+
+        assertFalse(Files.readString(patch).isEmpty());
+        assertFilesEqual(MainTest.copyTestSources(tempDir.resolve("original")), patchedDir);
+
+        Process process = new ProcessBuilder("git", "apply", patch.toString()).directory(patchedDir.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+        assertFilesEqual(transformedDir, patchedDir);
+    }
+
+    @Test
+    public void patchKeepsCharsetAndByteOrderMark() throws Exception {
+        Path transformedDir = encodeVariously(MainTest.copyTestSources(tempDir.resolve("transformed")));
+        Path patchedDir = encodeVariously(MainTest.copyTestSources(tempDir.resolve("patched")));
+        Path patch = tempDir.resolve("changes.patch");
+
+        Main.main(new String[]{transformedDir.toString()});
+        Main.main(new String[]{patchedDir.toString(), "--patch", patch.toString()});
+
+        Process process = new ProcessBuilder("git", "apply", patch.toString()).directory(patchedDir.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+        try (Stream<Path> files = Files.list(transformedDir)) {
+            for (Path expected : files.toList()) {
+                Path actual = patchedDir.resolve(expected.getFileName());
+                assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual), expected.getFileName().toString());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsUtf16EncodedFiles() throws Exception {
+        Path dir = MainTest.copyTestSources(tempDir.resolve("utf16"));
+        Path file;
+        try (Stream<Path> files = Files.list(dir)) {
+            file = files.filter(f -> f.getFileName().toString().equals("SingleLocalAdvice.java")).findFirst().orElseThrow();
+        }
+        byte[] original = ("\uFEFF" + Files.readString(file)).getBytes(StandardCharsets.UTF_16LE);
+        Files.write(file, original);
+
+        PatchOutput output = new PatchOutput(PatchOutput.Format.UNIFIED_DIFF, dir);
+        List<TransformPipeline.FileResult> results = new ArrayList<>();
+        new TransformPipeline(1, true, null, new TransformerStats(0), output, AdviceTypeSolver.getShared(), FileCostModel.create(), null)
+                .run(() -> Stream.of(file), results::add);
+
+        assertEquals(1, results.size());
+        assertNotNull(results.get(0).failure());
+        assertTrue(results.get(0).failure().getMessage().contains("UTF-16"), results.get(0).failure().toString());
+        assertEquals(null, results.get(0).patch());
+        assertArrayEquals(original, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void editsReproduceTheTransformedFiles() throws Exception {
+        Path transformedDir = MainTest.copyTestSources(tempDir.resolve("transformed"));
+        Path editedDir = MainTest.copyTestSources(tempDir.resolve("edited"));
+        Path edits = tempDir.resolve("edits.json");
+
+        Main.main(new String[]{transformedDir.toString()});
+        Main.main(new String[]{editedDir.toString(), "--edits-json", edits.toString()});
+
+        List<String> lines = Files.readAllLines(edits);
+        assertFalse(lines.isEmpty());
+        for (String line : lines) {
+            Map<?, ?> fileEdits = (Map<?, ?>) Json.parse(line);
+            Path file = editedDir.resolve((String) fileEdits.get("path"));
+            StringBuilder content = new StringBuilder(Files.readString(file));
+            List<?> editList = (List<?>) fileEdits.get("edits");
+            // applying the edits back to front keeps the offsets of the preceding edits valid
+            for (int i = editList.size() - 1; i >= 0; i--) {
+                Map<?, ?> edit = (Map<?, ?>) editList.get(i);
+                int offset = ((Long) edit.get("offset")).intValue();
+                int length = ((Long) edit.get("length")).intValue();
+                content.replace(offset, offset + length, (String) edit.get("text"));
+            }
+            Files.writeString(file, content);
+        }
+        assertFilesEqual(transformedDir, editedDir);
+    }
+
+    @Test
+    public void marksMissingNewlineAtEndOfFile() {
+        PatchOutput output = new PatchOutput(PatchOutput.Format.UNIFIED_DIFF, Path.of("root"));
+        String patch = output.render(Path.of("root", "dir", "A.java"), "a\nb\nc", "a\nB\nc");
+        assertEquals("""
+                diff --git a/dir/A.java b/dir/A.java
+                --- a/dir/A.java
+                +++ b/dir/A.java
+                @@ -1,3 +1,3 @@
+                 a
+                -b
+                +B
+                 c
+                \\ No newline at end of file
+                """, patch);
+    }
+
+    /**
+     * Adds a byte order mark to every other file and an ISO-8859-1 encoded comment to the remaining ones.
+     */
+    private static Path encodeVariously(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> javaFiles = files.filter(file -> file.toString().endsWith(".java")).sorted().toList();
+            for (int i = 0; i < javaFiles.size(); i++) {
+                Path file = javaFiles.get(i);
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                if (i % 2 == 0) {
+                    content.writeBytes(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+                    content.writeBytes(Files.readAllBytes(file));
+                } else {
+                    content.writeBytes(Files.readAllBytes(file));
+                    content.writeBytes("// Gr\u00FC\u00DFe\n".getBytes(StandardCharsets.ISO_8859_1));
+                }
+                Files.write(file, content.toByteArray());
+            }
+        }
+        return dir;
+    }
+
+    private static void assertFilesEqual(Path expectedDir, Path actualDir) throws Exception {
+        try (Stream<Path> files = Files.list(expectedDir)) {
+            List<Path> expectedFiles = files.toList();
+            assertTrue(expectedFiles.size() > 1);
+            for (Path expected : expectedFiles) {
+                Path actual = actualDir.resolve(expected.getFileName());
+                assertEquals(Files.readString(expected), Files.readString(actual), expected.getFileName().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void storesChangedAndUnchangedResults() {
+        ResultCache cache = new ResultCache(tempDir, ResultCache.DEFAULT_MAX_BYTES, "");
+        String changedKey = cache.key(content("class Foo {}"));
+        String unchangedKey = cache.key(content("class Bar {}"));
+        assertEquals(Optional.empty(), cache.get(changedKey));
+
+        cache.put(changedKey, new ResultCache.Result("class Foo { }".getBytes(StandardCharsets.UTF_8)));
+        cache.put(unchangedKey, new ResultCache.Result(null));
+
+        ResultCache.Result changed = cache.get(changedKey).orElseThrow();
+        assertTrue(changed.changed());
+        assertArrayEquals("class Foo { }".getBytes(StandardCharsets.UTF_8), changed.output());
+        assertFalse(cache.get(unchangedKey).orElseThrow().changed());
+        // another instance, e.g. of another checkout, sees the same entries
+        assertTrue(new ResultCache(tempDir, ResultCache.DEFAULT_MAX_BYTES, "").get(changedKey).isPresent());
+    }
+
+    @Test
+    public void entriesAreReadableByOtherUsersAsPermittedByTheUmask() throws Exception {
+        assumeTrue(Files.getFileStore(tempDir).supportsFileAttributeView(PosixFileAttributeView.class));
+        ResultCache cache = new ResultCache(tempDir, ResultCache.DEFAULT_MAX_BYTES, "");
+        String key = cache.key(content("class Foo {}"));
+        cache.put(key, new ResultCache.Result(null));
+
+        Path reference = tempDir.resolve("reference");
+        Files.newOutputStream(reference).close();
+        Path entry;
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            entry = files.filter(file -> file.getFileName().toString().equals(key)).findFirst().orElseThrow();
+        }
+        assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(entry));
+    }
+
+    @Test
+    public void keyDependsOnContentAndOptions() {
+        ResultCache cache = new ResultCache(tempDir, ResultCache.DEFAULT_MAX_BYTES, "");
+        ByteBuffer content = content("class Foo {}");
+        assertEquals(cache.key(content), cache.key(content("class Foo {}")));
+        assertEquals(0, content.position());
+        assertNotEquals(cache.key(content), cache.key(content("class Foo { }")));
+        assertNotEquals(cache.key(content), new ResultCache(tempDir, ResultCache.DEFAULT_MAX_BYTES, "other").key(content));
+        assertFalse(ResultCache.toolVersion().isEmpty());
+    }
+
+    @Test
+    public void ignoresCorruptEntries() throws Exception {
+        ResultCache cache = new ResultCache(tempDir, ResultCache.DEFAULT_MAX_BYTES, "");
+        String key = cache.key(content("class Foo {}"));
+        cache.put(key, new ResultCache.Result(null));
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            Path entry = files.filter(file -> file.getFileName().toString().equals(key)).findFirst().orElseThrow();
+            Files.writeString(entry, "garbage");
+        }
+        assertEquals(Optional.empty(), cache.get(key));
+    }
+
+    @Test
+    public void ignoresAndDeletesTruncatedEntries() throws Exception {
+        ResultCache cache = new ResultCache(tempDir, ResultCache.DEFAULT_MAX_BYTES, "");
+        String key = cache.key(content("class Foo {}"));
+        byte[] output = "import net.bytebuddy.asm.Advice;\nimport java.util.List;\nclass Foo { }".getBytes(StandardCharsets.UTF_8);
+        cache.put(key, new ResultCache.Result(output));
+        Path entry;
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            entry = files.filter(file -> file.getFileName().toString().equals(key)).findFirst().orElseThrow();
+        }
+        byte[] data = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(data, data.length - 20));
+
+        assertEquals(Optional.empty(), cache.get(key));
+        assertFalse(Files.exists(entry));
+
+        // a modified output of the same length doesn't match the hash
+        cache.put(key, new ResultCache.Result(output));
+        data[data.length - 1] = ' ';
+        Files.write(entry, data);
+        assertEquals(Optional.empty(), cache.get(key));
+    }
+
+    @Test
+    public void trimEvictsLeastRecentlyUsedEntries() throws Exception {
+        ResultCache cache = new ResultCache(tempDir, 3000, "");
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String key = cache.key(content("class Foo" + i + " {}"));
+            cache.put(key, new ResultCache.Result(new byte[999]));
+            keys.add(key);
+        }
+        // a single base time, so that the order of the entries doesn't depend on the order in which they are visited
+        long baseTime = System.currentTimeMillis() - 60_000;
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(baseTime + keys.indexOf(file.getFileName().toString())));
+            }
+        }
+        // using an entry makes it the most recently used one
+        assertTrue(cache.get(keys.get(0)).isPresent());
+
+        assertEquals(2, cache.trim());
+
+        assertTrue(cache.get(keys.get(0)).isPresent());
+        assertFalse(cache.get(keys.get(1)).isPresent());
+        assertFalse(cache.get(keys.get(2)).isPresent());
+        assertTrue(cache.get(keys.get(3)).isPresent());
+        assertEquals(0, cache.trim());
+    }
+
+    @Test
+    public void pipelineReusesCachedResults() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        Path firstDir = MainTest.copyTestSources(tempDir.resolve("first"));
+        Path secondDir = MainTest.copyTestSources(tempDir.resolve("second"));
+        Path plainDir = MainTest.copyTestSources(tempDir.resolve("plain"));
+        Main.main(new String[]{plainDir.toString()});
+
+        TransformerStats firstStats = run(firstDir, cacheDir);
+        assertEquals(0, firstStats.get(TransformerStats.Counter.RESULT_CACHE_HITS));
+        assertTrue(firstStats.get(TransformerStats.Counter.RESULT_CACHE_MISSES) > 0);
+
+        TransformerStats secondStats = run(secondDir, cacheDir);
+        assertEquals(firstStats.get(TransformerStats.Counter.RESULT_CACHE_MISSES), secondStats.get(TransformerStats.Counter.RESULT_CACHE_HITS));
+        assertEquals(0, secondStats.get(TransformerStats.Counter.RESULT_CACHE_MISSES));
+
+        try (Stream<Path> files = Files.list(plainDir)) {
+            for (Path file : files.toList()) {
+                Path relative = plainDir.relativize(file);
+                assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(firstDir.resolve(relative)), relative.toString());
+                assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(secondDir.resolve(relative)), relative.toString());
+            }
+        }
+    }
+
+    private static TransformerStats run(Path sourceDir, Path cacheDir) throws Exception {
+        TransformerStats stats = new TransformerStats(0);
+        ResultCache cache = new ResultCache(cacheDir, ResultCache.DEFAULT_MAX_BYTES, "");
+        List<Path> files;
+        try (Stream<Path> list = Files.list(sourceDir)) {
+            files = list.filter(file -> file.toString().endsWith(".java")).sorted().toList();
+        }
+        new TransformPipeline(2, true, null, stats, null, AdviceTypeSolver.getShared(), FileCostModel.create(), cache)
+                .run(files::stream, result -> assertEquals(null, result.failure(), result.file().toString()));
+        return stats;
+    }
+
+    private static ByteBuffer content(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,88 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SourceFileTest {
+
+    private static final String ADVICE = """
+            import net.bytebuddy.asm.Advice;
+
+            // Größe
+            public class MyAdvice {
+                @Advice.OnMethodExit
+                public static void exit(@Advice.Return(readOnly = false) String result) {
+                    result = "foo";
+                }
+            }
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void retainsBomAndLineSeparators() throws Exception {
+        Path file = tempDir.resolve("MyAdvice.java");
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        Files.write(file, concat(bom, ADVICE.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(new AdviceTransformer().transform(file));
+
+        byte[] written = Files.readAllBytes(file);
+        assertArrayEquals(bom, Arrays.copyOf(written, 3));
+        String text = new String(written, 3, written.length - 3, StandardCharsets.UTF_8);
+        assertTrue(text.contains("AssignReturned.ToReturned"));
+        assertTrue(text.contains("Größe"));
+        assertFalse(text.replace("\r\n", "").contains("\n"), "all line separators should be CRLF");
+    }
+
+    @Test
+    public void retainsLegacyEncodedContent() throws Exception {
+        Path file = tempDir.resolve("MyAdvice.java");
+        Files.write(file, ADVICE.getBytes(StandardCharsets.ISO_8859_1));
+
+        assertTrue(new AdviceTransformer().transform(file));
+
+        String text = Files.readString(file, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("AssignReturned.ToReturned"));
+        assertTrue(text.contains("// Größe"));
+    }
+
+    @Test
+    public void doesNotWriteUnchangedFiles() throws Exception {
+        Path file = tempDir.resolve("MyAdvice.java");
+        Files.writeString(file, ADVICE);
+        AdviceTransformer transformer = new AdviceTransformer();
+        assertTrue(transformer.transform(file));
+
+        FileTime modified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, modified);
+        assertFalse(transformer.transform(file));
+        assertEquals(modified, Files.getLastModifiedTime(file));
+    }
+
+    @Test
+    public void detectsIdenticalOutput() {
+        SourceFile source = SourceFile.of(ADVICE.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, source.charset());
+        assertTrue(source.encodeIfChanged(ADVICE).isEmpty());
+        assertTrue(source.encodeIfChanged(ADVICE + "//").isPresent());
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
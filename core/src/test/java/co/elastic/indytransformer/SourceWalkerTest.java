@@ -0,0 +1,165 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SourceWalkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void prunesBuildOutputAndHiddenDirectories() throws Exception {
+        touch("pom.xml");
+        touch("src/main/java/co/elastic/Foo.java");
+        touch("src/main/java/co/elastic/README.md");
+        // a package named like a build directory
+        touch("src/main/java/co/elastic/target/Bar.java");
+        touch("src/main/java/co/elastic/build/Baz.java");
+        touch("target/generated-sources/Generated.java");
+        touch("gradle-module/build.gradle.kts");
+        touch("gradle-module/build/Generated.java");
+        touch("gradle-module/src/Qux.java");
+        touch(".git/objects/Git.java");
+        touch(".indy-advice-transformer/Cached.java");
+        touch("web/node_modules/Module.java");
+
+        assertEquals(List.of(
+                "gradle-module/src/Qux.java",
+                "src/main/java/co/elastic/Foo.java",
+                "src/main/java/co/elastic/build/Baz.java",
+                "src/main/java/co/elastic/target/Bar.java"
+        ), walk(new SourceWalker()));
+    }
+
+    @Test
+    public void honorsGitignore() throws Exception {
+        Files.writeString(tempDir.resolve(".gitignore"), """
+                # comment
+                generated/
+                *Ignored.java
+                !KeptIgnored.java
+                /Root.java
+                """);
+        Files.createDirectories(tempDir.resolve("module"));
+        Files.writeString(tempDir.resolve("module/.gitignore"), """
+                sub/*.java
+                """);
+        touch("Root.java");
+        touch("nested/Root.java");
+        touch("generated/Generated.java");
+        touch("nested/generated/Generated.java");
+        touch("FooIgnored.java");
+        touch("KeptIgnored.java");
+        touch("module/sub/Sub.java");
+        touch("module/sub/deeper/Deeper.java");
+        touch("module/Module.java");
+
+        assertEquals(List.of(
+                "KeptIgnored.java",
+                "module/Module.java",
+                "module/sub/deeper/Deeper.java",
+                "nested/Root.java"
+        ), walk(new SourceWalker()));
+        assertEquals(9, walk(new SourceWalker(SourceWalker.DEFAULT_INCLUDES, List.of(), false)).size());
+    }
+
+    @Test
+    public void appliesIncludeAndExcludeGlobs() throws Exception {
+        touch("Foo.java");
+        touch("a/Foo.java");
+        touch("a/FooAdvice.java");
+        touch("a/generated/Foo.java");
+        touch("b/FooAdvice.java");
+        touch("b/FooAdvice.kt");
+
+        assertEquals(List.of("a/FooAdvice.java", "b/FooAdvice.java"),
+                walk(new SourceWalker(List.of("**/*Advice.java"), List.of(), true)));
+        assertEquals(List.of("Foo.java", "a/Foo.java", "a/FooAdvice.java"),
+                walk(new SourceWalker(SourceWalker.DEFAULT_INCLUDES, List.of("**/generated", "b/**"), true)));
+        assertEquals(List.of("a/Foo.java", "a/FooAdvice.java", "a/generated/Foo.java"),
+                walk(new SourceWalker(List.of("a/**/*.java"), List.of(), true)));
+    }
+
+    @Test
+    public void translatesGlobs() {
+        assertTrue("Foo.java".matches(SourceWalker.globToRegex("**/*.java")));
+        assertTrue("a/b/Foo.java".matches(SourceWalker.globToRegex("**/*.java")));
+        assertFalse("a/Foo.java".matches(SourceWalker.globToRegex("*.java")));
+        assertTrue("a/b".matches(SourceWalker.globToRegex("a/**")));
+        assertTrue("a/Foo1.java".matches(SourceWalker.globToRegex("a/Foo[0-9].java")));
+        assertFalse("a/Foo1.java".matches(SourceWalker.globToRegex("a/Foo[!0-9].java")));
+        assertTrue("a/Foo$1.java".matches(SourceWalker.globToRegex("a/Foo$?.java")));
+    }
+
+    @Test
+    public void returnsFilesInSortedDepthFirstOrder() throws Exception {
+        touch("b/B.java");
+        touch("a/c/C.java");
+        touch("a/A.java");
+        touch("a-b/D.java");
+        touch("A.java");
+        touch("a.java");
+        assertEquals(List.of("A.java", "a/A.java", "a/c/C.java", "a-b/D.java", "a.java", "b/B.java"), walk(new SourceWalker(), false));
+    }
+
+    @Test
+    public void walkOrderIsStable() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 10; j++) {
+                touch("module" + i + "/src/main/java/p" + j % 3 + "/File" + j + ".java");
+            }
+        }
+        List<String> first = walk(new SourceWalker(), false);
+        assertEquals(400, first.size());
+        assertEquals(walk(new SourceWalker(), true), first.stream().sorted().toList());
+        for (int run = 0; run < 10; run++) {
+            assertEquals(first, walk(new SourceWalker(), false));
+        }
+    }
+
+    @Test
+    public void closingTheStreamStopsTheWalk() throws Exception {
+        // more files than the walker buffers, so that the walk blocks until the stream is closed
+        for (int i = 0; i < 3000; i++) {
+            touch("dir" + i % 10 + "/File" + i + ".java");
+        }
+        try (Stream<Path> files = new SourceWalker().walk(tempDir, 2)) {
+            assertTrue(files.findFirst().isPresent());
+        }
+    }
+
+    @Test
+    public void failsForMissingRoot() {
+        assertThrows(NoSuchFileException.class, () -> new SourceWalker().walk(tempDir.resolve("missing"), 2));
+    }
+
+    private List<String> walk(SourceWalker walker) throws IOException {
+        return walk(walker, true);
+    }
+
+    private List<String> walk(SourceWalker walker, boolean sorted) throws IOException {
+        try (Stream<Path> files = walker.walk(tempDir, 4)) {
+            Stream<String> relativePaths = files.map(file -> tempDir.relativize(file).toString().replace('\\', '/'));
+            return (sorted ? relativePaths.sorted() : relativePaths).toList();
+        }
+    }
+
+    private void touch(String relativePath) throws IOException {
+        Path file = tempDir.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "");
+    }
+}
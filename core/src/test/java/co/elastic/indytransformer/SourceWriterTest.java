@@ -0,0 +1,59 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class SourceWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void replacesFilesWithoutLeavingTemporaryFiles() throws Exception {
+        Path file = tempDir.resolve("Foo.java");
+        Files.writeString(file, "old");
+        try (SourceWriter writer = new SourceWriter()) {
+            writer.write(file, "new".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("new", Files.readString(file));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void retainsPermissions() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path file = tempDir.resolve("Foo.java");
+        Files.writeString(file, "old");
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r-----"));
+        try (SourceWriter writer = new SourceWriter()) {
+            writer.write(file, "new".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    @Test
+    public void replacesTheTargetOfSymbolicLinks() throws Exception {
+        Path file = tempDir.resolve("Foo.java");
+        Path link = tempDir.resolve("Link.java");
+        Files.writeString(file, "old");
+        Files.createSymbolicLink(link, file);
+        try (SourceWriter writer = new SourceWriter()) {
+            writer.write(link, "new".getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals("new", Files.readString(file));
+    }
+}
@@ -0,0 +1,96 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.printer.lexicalpreservation.LexicalPreservingPrinter;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SplicePrinterTest {
+
+    private static final String SOURCE = """
+            package foo;
+
+            public class Instrumentation {
+              /** Not an advice. */
+              public void transform(  int   unusualFormatting ) { }
+
+              /**
+               * The advice.
+               */
+              public static class MyAdvice {
+                @net.bytebuddy.asm.Advice.OnMethodExit
+                public static void exit(@net.bytebuddy.asm.Advice.Return(readOnly = false) String result) {
+                  result = "foo";
+                }
+              }
+            }
+            """;
+
+    @Test
+    public void preservesLexicalInformationOnlyForAdviceClasses() {
+        AdviceTransformer transformer = new AdviceTransformer();
+        CompilationUnit cu = transformer.load(SOURCE);
+        assertTrue(transformer.transform(cu));
+        String spliced = transformer.print(cu);
+
+        ClassOrInterfaceDeclaration instrumentation = cu.getClassByName("Instrumentation").get();
+        ClassOrInterfaceDeclaration advice = (ClassOrInterfaceDeclaration) instrumentation.getMembers().get(1);
+        assertFalse(LexicalPreservingPrinter.isAvailableOn(cu));
+        assertFalse(LexicalPreservingPrinter.isAvailableOn(instrumentation.getMethods().get(0)));
+        assertTrue(LexicalPreservingPrinter.isAvailableOn(advice));
+
+        assertEquals("""
+                package foo;
+
+                import net.bytebuddy.asm.Advice.AssignReturned;
+
+                public class Instrumentation {
+                  /** Not an advice. */
+                  public void transform(  int   unusualFormatting ) { }
+
+                  /**
+                   * The advice.
+                   */
+                  public static class MyAdvice {
+                    @AssignReturned.ToReturned
+                    @net.bytebuddy.asm.Advice.OnMethodExit
+                    public static String exit() {
+                      return "foo";
+                    }
+                  }
+                }
+                """, spliced);
+    }
+
+    @Test
+    public void matchesFullLexicalPreservation() {
+        String source = SOURCE.replace("package foo;\n", "package foo;\n\nimport java.util.List;\n");
+        AdviceTransformer transformer = new AdviceTransformer();
+        CompilationUnit cu = transformer.load(source);
+        assertTrue(transformer.transform(cu));
+        assertEquals(printWithFullLexicalPreservation(source), transformer.print(cu));
+    }
+
+    @Test
+    public void printsUnchangedSourcesUnchanged() {
+        AdviceTransformer transformer = new AdviceTransformer();
+        String source = SOURCE.replace("readOnly = false", "readOnly = true");
+        CompilationUnit cu = transformer.load(source);
+        assertFalse(transformer.transform(cu));
+        assertEquals(source, transformer.print(cu));
+    }
+
+    private static String printWithFullLexicalPreservation(String source) {
+        JavaParser parser = new JavaParser(new ParserConfiguration().setSymbolResolver(new JavaSymbolSolver(AdviceTypeSolver.getShared())));
+        CompilationUnit cu = LexicalPreservingPrinter.setup(parser.parse(source).getResult().get());
+        new AdviceTransformer().transform(cu);
+        return LexicalPreservingPrinter.print(cu);
+    }
+}
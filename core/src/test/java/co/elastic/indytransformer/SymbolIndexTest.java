@@ -0,0 +1,198 @@
+package co.elastic.indytransformer;
+
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SymbolIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void indexesTypesOfAllModules() throws Exception {
+        Path rootDir = createProject();
+        Path cacheDir = tempDir.resolve("cache");
+        SymbolIndex.build(rootDir, 2).save(cacheDir);
+
+        SymbolIndex index = SymbolIndex.load(cacheDir).orElseThrow();
+        assertEquals(5, index.size());
+        assertEquals(Optional.of("context/src/main/java/com/example/context/AdviceContext.java"), index.findSourceFile("com.example.context.AdviceContext"));
+        assertEquals(Optional.of("context/src/main/java/com/example/context/AdviceContext.java"), index.findSourceFile("com.example.context.AdviceContext.Span"));
+        assertEquals(Optional.of("context/src/main/java/com/example/context/Unicode.java"), index.findSourceFile("com.example.context.Ünicode"));
+        assertEquals(Optional.of("plugin/src/main/java/com/example/plugin/MyAdvice.java"), index.findSourceFile("com.example.plugin.MyAdvice"));
+        assertEquals(Optional.of("plugin/src/main/java/com/example/plugin/MyAdvice.java"), index.findSourceFile("com.example.plugin.Helper"));
+        assertFalse(index.findSourceFile("com.example.context.Missing").isPresent());
+        assertFalse(index.findSourceFile("com.example.context").isPresent());
+        assertFalse(index.findSourceFile("java.lang.String").isPresent());
+    }
+
+    @Test
+    public void detectsChangedSources() throws Exception {
+        Path rootDir = createProject();
+        Path cacheDir = tempDir.resolve("cache");
+        SymbolIndex.build(rootDir, 2).save(cacheDir);
+        SymbolIndex index = SymbolIndex.load(cacheDir).orElseThrow();
+        assertTrue(index.isUpToDate(rootDir, SymbolIndex.findSourceFiles(rootDir, 2)));
+
+        Path helper = rootDir.resolve("plugin/src/main/java/com/example/plugin/Helper.java");
+        Files.writeString(helper, "package com.example.plugin; class OtherHelper {}");
+        assertFalse(index.isUpToDate(rootDir, SymbolIndex.findSourceFiles(rootDir, 2)));
+        SymbolIndex.build(rootDir, 2).save(cacheDir);
+        index = SymbolIndex.load(cacheDir).orElseThrow();
+        assertTrue(index.isUpToDate(rootDir, SymbolIndex.findSourceFiles(rootDir, 2)));
+        assertEquals(Optional.of("plugin/src/main/java/com/example/plugin/Helper.java"), index.findSourceFile("com.example.plugin.OtherHelper"));
+
+        Files.setLastModifiedTime(helper, FileTime.fromMillis(Files.getLastModifiedTime(helper).toMillis() + 1000));
+        assertFalse(index.isUpToDate(rootDir, SymbolIndex.findSourceFiles(rootDir, 2)));
+        Files.delete(helper);
+        assertFalse(index.isUpToDate(rootDir, SymbolIndex.findSourceFiles(rootDir, 2)));
+    }
+
+    @Test
+    public void resolvedProjectTypesShadowImports() throws Exception {
+        Path plainDir = createShadowingProject(tempDir.resolve("plain"));
+        Main.main(new String[]{plainDir.toString()});
+        // the on demand import is used if the type in the same package is unknown
+        assertTrue(Files.readString(plainDir.resolve("com/example/MyAdvice.java")).contains("@Advice.Enter"));
+
+        Path indexedDir = tempDir.resolve("indexed");
+        Files.createDirectories(indexedDir.resolve("com/example"));
+        Files.writeString(indexedDir.resolve("com/example/Other.java"), "package com.example; class Other {}");
+        Main.main(new String[]{indexedDir.toString(), "--symbol-index"});
+        // the index built by the previous run doesn't know about the new files yet
+        createShadowingProject(indexedDir);
+        Main.main(new String[]{indexedDir.toString(), "--symbol-index"});
+
+        assertEquals(Optional.of("com/example/Advice.java"),
+                SymbolIndex.load(indexedDir.resolve(Main.DEFAULT_CACHE_DIR)).orElseThrow().findSourceFile("com.example.Advice.OnMethodEnter"));
+        assertEquals(shadowingAdvice(), Files.readString(indexedDir.resolve("com/example/MyAdvice.java")));
+    }
+
+    @Test
+    public void ignoresUnknownFormat() throws Exception {
+        Path cacheDir = Files.createDirectories(tempDir.resolve("cache"));
+        assertFalse(SymbolIndex.load(cacheDir).isPresent());
+        Files.writeString(cacheDir.resolve("symbol-index.bin"), "not an index");
+        assertFalse(SymbolIndex.load(cacheDir).isPresent());
+    }
+
+    @Test
+    public void resolvesProjectTypes() throws Exception {
+        Path rootDir = createProject();
+        SymbolIndex index = SymbolIndex.build(rootDir, 1);
+        AdviceTypeSolver typeSolver = new AdviceTypeSolver(AdviceTypeSolver.DEFAULT_CACHE_SIZE, new ProjectTypeSolver(index, rootDir));
+
+        SymbolReference<ResolvedReferenceTypeDeclaration> span = typeSolver.tryToSolveType("com.example.context.AdviceContext.Span");
+        assertTrue(span.isSolved());
+        assertEquals("com.example.context.AdviceContext.Span", span.getCorrespondingDeclaration().getQualifiedName());
+        // the supertypes are resolved using the same solver
+        assertEquals("com.example.context.Ünicode", span.getCorrespondingDeclaration().asClass().getSuperClass().orElseThrow().getQualifiedName());
+        assertTrue(typeSolver.tryToSolveType("net.bytebuddy.asm.Advice.Local").isSolved());
+        assertTrue(typeSolver.tryToSolveType("java.lang.String").isSolved());
+        assertFalse(typeSolver.tryToSolveType("com.example.context.Missing").isSolved());
+
+        // removed files are answered as unsolved
+        Files.delete(rootDir.resolve("plugin/src/main/java/com/example/plugin/MyAdvice.java"));
+        assertFalse(typeSolver.tryToSolveType("com.example.plugin.Helper").isSolved());
+    }
+
+    /**
+     * Creates an advice using {@code Advice} annotations, which resolve to a type of the same package instead of the
+     * on demand import of {@code net.bytebuddy.asm}, so that the advice must not be transformed.
+     */
+    private static Path createShadowingProject(Path rootDir) throws Exception {
+        Path packageDir = Files.createDirectories(rootDir.resolve("com/example"));
+        Files.writeString(packageDir.resolve("Advice.java"), """
+                package com.example;
+
+                public @interface Advice {
+                    @interface OnMethodEnter {
+                    }
+
+                    @interface OnMethodExit {
+                    }
+
+                    @interface Local {
+                        String value();
+                    }
+                }
+                """);
+        Files.writeString(packageDir.resolve("MyAdvice.java"), shadowingAdvice());
+        return rootDir;
+    }
+
+    private static String shadowingAdvice() {
+        return """
+                package com.example;
+
+                import net.bytebuddy.asm.*;
+
+                public class MyAdvice {
+
+                    @Advice.OnMethodEnter
+                    public static void enter(@Advice.Local("foo") String foo) {
+                        foo = "Hello";
+                    }
+
+                    @Advice.OnMethodExit
+                    public static void exit(@Advice.Local("foo") String foo) {
+                        System.out.println(foo);
+                    }
+                }
+                """;
+    }
+
+    private Path createProject() throws Exception {
+        Path rootDir = tempDir.resolve("project");
+        Path contextDir = Files.createDirectories(rootDir.resolve("context/src/main/java/com/example/context"));
+        Files.writeString(contextDir.resolve("AdviceContext.java"), """
+                package com.example.context;
+
+                public class AdviceContext {
+                    public static class Span extends Ünicode {
+                    }
+
+                    void method() {
+                        class LocalClass {
+                        }
+                    }
+                }
+                """);
+        // the file name doesn't match, because the file system encoding may not support the name
+        Files.writeString(contextDir.resolve("Unicode.java"), """
+                package com.example.context;
+
+                class Ünicode {
+                }
+                """);
+        Path pluginDir = Files.createDirectories(rootDir.resolve("plugin/src/main/java/com/example/plugin"));
+        Files.writeString(pluginDir.resolve("MyAdvice.java"), """
+                package com.example.plugin;
+
+                import com.example.context.AdviceContext;
+                import net.bytebuddy.asm.Advice;
+
+                public class MyAdvice {
+                    @Advice.OnMethodEnter
+                    public static void enter(@Advice.Local("context") AdviceContext context) {
+                    }
+                }
+
+                class Helper {
+                }
+                """);
+        Files.writeString(pluginDir.resolve("Broken.java"), "package com.example.plugin; public class {");
+        return rootDir;
+    }
+}
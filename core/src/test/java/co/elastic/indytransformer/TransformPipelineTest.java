@@ -0,0 +1,69 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransformPipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void reportsResultsInDiscoveryOrder() throws Exception {
+        List<AdviceCorpusGenerator.GeneratedFile> generated = new AdviceCorpusGenerator(new AdviceCorpusGenerator.Config()
+                .fileCount(200)
+                .adviceRatio(0.3)
+                .methodSize(2))
+                .writeTo(tempDir);
+        List<Path> files = new ArrayList<>();
+        for (AdviceCorpusGenerator.GeneratedFile file : generated) {
+            files.add(tempDir.resolve(file.relativePath()));
+        }
+        Path missingFile = tempDir.resolve("Missing.java");
+        files.add(100, missingFile);
+
+        List<TransformPipeline.FileResult> results = new ArrayList<>();
+        long found = new TransformPipeline(3, true, null, TransformerStats.DISABLED).run(files::stream, results::add);
+
+        assertEquals(files.size(), found);
+        assertEquals(files, results.stream().map(TransformPipeline.FileResult::file).toList());
+        for (int i = 0; i < generated.size(); i++) {
+            TransformPipeline.FileResult result = results.get(i < 100 ? i : i + 1);
+            assertNull(result.failure());
+            TransformOutcome expected = generated.get(i).transformedAdviceCount() > 0 ? TransformOutcome.TRANSFORMED
+                    : generated.get(i).source().contains("net.bytebuddy") ? TransformOutcome.UNCHANGED : TransformOutcome.NO_ADVICE;
+            assertEquals(expected, result.outcome(), generated.get(i).relativePath());
+        }
+        assertNotNull(results.get(100).failure());
+        assertNull(results.get(100).outcome());
+    }
+
+    @Test
+    public void propagatesDiscoveryFailures() {
+        TransformPipeline pipeline = new TransformPipeline(2, true, null, TransformerStats.DISABLED);
+        assertThrows(IOException.class, () -> pipeline.run(() -> {
+            throw new IOException("walk failed");
+        }, result -> {
+        }));
+        assertThrows(IOException.class, () -> pipeline.run(() -> Files.walk(tempDir.resolve("does-not-exist")), result -> {
+        }));
+    }
+
+    @Test
+    public void handlesEmptySource() throws Exception {
+        assertEquals(0, new TransformPipeline(4, false, null, TransformerStats.DISABLED).run(Stream::empty, result -> {
+        }));
+    }
+}
@@ -0,0 +1,84 @@
+package co.elastic.indytransformer;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransformerEventsTest {
+
+    private static final String PREFIX = "co.elastic.indytransformer.";
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void disableEvents() {
+        TransformerEvents.setEnabled(false);
+    }
+
+    @Test
+    public void recordsPhasesWithFileAndAdviceClass() throws Exception {
+        Path sourceDir = MainTest.copyTestSources(tempDir.resolve("sources"));
+        Path file = sourceDir.resolve("EnterAndLocalsCombined.java");
+
+        List<RecordedEvent> events = record(true, () -> new AdviceTransformer().transform(file));
+
+        Set<String> eventTypes = events.stream()
+                .map(event -> event.getEventType().getName().substring(PREFIX.length()))
+                .collect(Collectors.toSet());
+        assertTrue(eventTypes.containsAll(Set.of("Parse", "Plan", "RewriteLocals", "RewriteReturnStatements", "Print", "Write")), eventTypes.toString());
+        for (RecordedEvent event : events) {
+            assertEquals(file.toString(), event.getString("file"), event.toString());
+        }
+        assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().equals(PREFIX + "RewriteLocals"))
+                .allMatch(event -> event.getString("adviceClass") != null));
+    }
+
+    @Test
+    public void endsEventsOfFailedPhases() throws Exception {
+        List<RecordedEvent> events = record(true, () -> assertThrows(RuntimeException.class,
+                () -> new AdviceTransformer().transform("public class {".getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(List.of(PREFIX + "Parse"), events.stream().map(event -> event.getEventType().getName()).toList());
+    }
+
+    @Test
+    public void emitsNothingUnlessEnabled() throws Exception {
+        Path sourceDir = MainTest.copyTestSources(tempDir.resolve("sources"));
+        List<RecordedEvent> events = record(false, () -> new AdviceTransformer().transform(sourceDir.resolve("NestedClass.java")));
+
+        assertEquals(List.of(), events);
+    }
+
+    private List<RecordedEvent> record(boolean eventsEnabled, Runnable action) throws Exception {
+        Path recordingFile = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("Parse", "Plan", "RewriteLocals", "RewriteReturn", "RewriteFields", "RewriteArguments",
+                    "RewriteReturnStatements", "Print", "Write", "AnnotationResolution")) {
+                recording.enable(PREFIX + name).withoutThreshold();
+            }
+            recording.start();
+            TransformerEvents.setEnabled(eventsEnabled);
+            action.run();
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        return RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().startsWith(PREFIX))
+                .toList();
+    }
+}
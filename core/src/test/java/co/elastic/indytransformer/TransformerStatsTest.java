@@ -0,0 +1,80 @@
+package co.elastic.indytransformer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransformerStatsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void writesJsonReport() throws Exception {
+        Path sourcesDir = MainTest.copyTestSources(tempDir.resolve("sources"));
+        Files.writeString(sourcesDir.resolve("NoAdvice.java"), "public class NoAdvice {}");
+        long sourceCount;
+        try (var files = Files.list(sourcesDir)) {
+            sourceCount = files.count();
+        }
+        Path report = tempDir.resolve("stats.json");
+
+        Main.main(new String[]{sourcesDir.toString(), "--stats", "--stats-json", report.toString()});
+
+        String json = Files.readString(report);
+        assertEquals(sourceCount, counter(json, "files_scanned"));
+        assertEquals(1, counter(json, "files_without_advice"));
+        assertEquals(sourceCount - 1, counter(json, "files_parsed"));
+        assertTrue(counter(json, "files_transformed") > 0);
+        assertTrue(counter(json, "annotation_import_hits") + counter(json, "annotation_resolutions") > 0);
+        assertEquals(0, counter(json, "type_cache_evictions"));
+        assertEquals(sourceCount - 1, phaseCount(json, "parse"));
+        assertTrue(phaseCount(json, "plan") > 0);
+        assertEquals(1, phaseCount(json, "discovery"));
+        assertTrue(json.contains("\"slowestFiles\": [\n    {\"path\": "));
+    }
+
+    @Test
+    public void keepsOnlySlowestFiles() throws Exception {
+        TransformerStats stats = new TransformerStats(2);
+        for (long nanos : List.of(5L, 1L, 9L, 3L, 7L)) {
+            stats.recordFile(Path.of("file" + nanos), nanos);
+        }
+        Path report = tempDir.resolve("stats.json");
+        stats.writeJson(report);
+
+        Matcher matcher = Pattern.compile("\"path\": \"(\\w+)\"").matcher(Files.readString(report));
+        assertTrue(matcher.find());
+        assertEquals("file9", matcher.group(1));
+        assertTrue(matcher.find());
+        assertEquals("file7", matcher.group(1));
+        assertFalse(matcher.find());
+    }
+
+    @Test
+    public void disabledStatsRecordNothing() {
+        TransformerStats.DISABLED.increment(TransformerStats.Counter.FILES_PARSED);
+        assertEquals(0, TransformerStats.DISABLED.get(TransformerStats.Counter.FILES_PARSED));
+    }
+
+    private static long counter(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\": (\\d+)").matcher(json);
+        assertTrue(matcher.find(), name);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static long phaseCount(String json, String phase) {
+        Matcher matcher = Pattern.compile("\"" + phase + "\": \\{\"count\": (\\d+)").matcher(json);
+        assertTrue(matcher.find(), phase);
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,49 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.asm.Advice.AssignReturned;
+import net.bytebuddy.asm.Advice.AssignReturned.ToFields.ToField;
+import net.bytebuddy.asm.Advice.AssignReturned.ToArguments.ToArgument;
+
+public class ComplexEnter {
+
+public static class AdviceLocals {
+    public String fooLocal;
+    public Number barLocal;
+}
+
+    @AssignReturned.ToFields({ @ToField(value = "myField", index = 1), @ToField(value = "myOtherField", index = 2) })
+    @AssignReturned.ToArguments({ @ToArgument(value = 42, index = 3), @ToArgument(value = 7, index = 4) })
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static Object[] enter(
+                            @Advice.Argument(7) int arg2
+   
+       
+    ) {
+    AdviceLocals locals = new AdviceLocals();
+
+        Object test = new Object();
+
+        locals.barLocal = 42;
+        locals.fooLocal = "Number is " + locals.barLocal;
+
+        return new Object[] { locals, String.class, "Hello World", arg2 + "foobar", 7 };
+    }
+
+    @AssignReturned.ToReturned(index = 0)
+    @AssignReturned.ToFields({ @ToField(value = "myField", index = 1), @ToField(value = "myOtherField", index = 2) })
+    @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
+    public static Object[] overrideReturn(
+    
+    @Advice.Enter Object[] enterResult
+   
+    ) {
+                                      AdviceLocals locals = (AdviceLocals) enterResult[0];
+
+        //Some multiline
+
+
+        //clarification comments
+        //another clarification
+        return new Object[] { "foobar", String.class, "Hello World" + locals.fooLocal + locals.barLocal };
+    }
+
+}
@@ -0,0 +1,23 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.asm.Advice.AssignReturned;
+import net.bytebuddy.asm.Advice.AssignReturned.ToFields.ToField;
+
+public class EnterAndAssignmentsCombined {
+
+    @AssignReturned.ToFields(@ToField(value = "foo", index = 1))
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static Object[] enter() {
+    
+            return new Object[] { 42, "Hello World" };
+    }
+
+    @AssignReturned.ToReturned
+    @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
+    public static String overrideReturn(@Advice.Enter Object[] enterResult
+    ) {
+                                      int enter = (int) enterResult[0];
+
+        return "Hello " + enter;
+    }
+
+}
@@ -0,0 +1,28 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.asm.Advice.AssignReturned;
+
+public class EnterAndLocalsCombined {
+
+public static class AdviceLocals {
+    public int enter;
+    public String fooLocal;
+}
+
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static AdviceLocals enter() {
+    AdviceLocals locals = new AdviceLocals();
+    locals.fooLocal = "Hello World";
+        locals.enter = 42;
+        return locals;
+    }
+
+    @AssignReturned.ToReturned
+    @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
+    public static String overrideReturn(@Advice.Enter AdviceLocals locals
+   
+    ) {
+
+        return locals.fooLocal + locals.enter;
+    }
+
+}
@@ -0,0 +1,30 @@
+import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
+import io.opentelemetry.javaagent.extension.instrumentation.TypeTransformer;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+
+import java.util.function.Supplier;
+
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import net.bytebuddy.asm.Advice.AssignReturned;
+import net.bytebuddy.asm.Advice.AssignReturned.ToFields.ToField;
+
+
+public class MyAdvice {
+
+    @AssignReturned.ToFields({ @ToField(value = "field0", index = 0), @ToField(value = "myField", index = 1), @ToField(value = "myOtherField", index = 2) })
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static Object[] enter(
+                            @Advice.FieldValue("myField") String originalField1,
+                             @Advice.FieldValue("myOtherField") String originalField2
+    ) {
+    String field1 = originalField1;
+    String field2 = originalField2;
+    field2 = "foo";
+        field1 = "bar" + field2;
+        return new Object[] { "42", field1, field2 };
+    }
+
+}
+
@@ -0,0 +1,23 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.asm.Advice.AssignReturned;
+
+public class ReadWriteReturn {
+
+    //blabla
+    //more blabla
+
+    @AssignReturned.ToReturned
+    @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
+    public static String overrideReturn(@Advice.Return(typing = Assigner.Typing.DYNAMIC) String originalInstrumetedReturn, @Advice.Thrown Throwable error) {
+    String instrumetedReturn = originalInstrumetedReturn;
+    //Some clarification comments
+        if (error != null) {
+            return instrumetedReturn + "foo";
+        } else {
+            instrumetedReturn = "bar";
+        }
+        return instrumetedReturn;
+    }
+
+}
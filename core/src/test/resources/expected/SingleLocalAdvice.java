@@ -0,0 +1,20 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.asm.Advice.AssignReturned;
+
+public class SingleLocalAdvice {
+
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static String enter() {
+    
+    return "Hello World";
+    }
+
+    @AssignReturned.ToReturned
+    @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
+    public static String overrideReturn(@Advice.Enter String fooLocal
+    ) {
+
+        return fooLocal;
+    }
+
+}
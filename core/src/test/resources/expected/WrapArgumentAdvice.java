@@ -0,0 +1,14 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.asm.Advice.AssignReturned;
+import net.bytebuddy.asm.Advice.AssignReturned.ToArguments.ToArgument;
+
+public class SingleLocalAdvice {
+
+    @AssignReturned.ToArguments(@ToArgument(2))
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static Runnable enterSchedule(
+            @Advice.Argument(2) Runnable runnable) {
+        return AkkaSchedulerTaskWrapper.wrap(runnable);
+    }
+
+}
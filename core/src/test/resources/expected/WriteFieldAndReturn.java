@@ -0,0 +1,25 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.asm.Advice.AssignReturned;
+import net.bytebuddy.asm.Advice.AssignReturned.ToFields.ToField;
+
+public class WriteFieldAndReturn {
+
+    //blabla
+    //more blabla
+
+    @AssignReturned.ToReturned(index = 0)
+    @AssignReturned.ToFields({ @ToField(value = "myField", index = 1), @ToField(value = "myOtherField", index = 2) })
+    @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
+    public static Object[] overrideReturn(
+    
+    ) {
+
+        //Some multiline
+
+
+        //clarification comments
+        //another clarification
+        return new Object[] { "foobar", String.class, "Hello World" };
+    }
+
+}
@@ -0,0 +1,22 @@
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.asm.Advice.AssignReturned;
+
+public class WriteOnlyReturn {
+
+    //blabla
+    //more blabla
+
+    @AssignReturned.ToReturned
+    @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
+    public static String overrideReturn(@Advice.Return String originalInstrumetedReturn, @Advice.Thrown Throwable error) {
+    String instrumetedReturn = originalInstrumetedReturn;
+    //Some clarification comments
+        if (error != null) {
+            return "foo";
+        } else {
+            instrumetedReturn = "bar";
+        }
+        return instrumetedReturn;
+    }
+
+}
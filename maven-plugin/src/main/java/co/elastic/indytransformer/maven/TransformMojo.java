@@ -0,0 +1,185 @@
+package co.elastic.indytransformer.maven;
+
+import co.elastic.indytransformer.AdviceTypeSolver;
+import co.elastic.indytransformer.FileCostModel;
+import co.elastic.indytransformer.IncrementalIndex;
+import co.elastic.indytransformer.ResultCache;
+import co.elastic.indytransformer.SourceWalker;
+import co.elastic.indytransformer.TransformOutcome;
+import co.elastic.indytransformer.TransformPipeline;
+import co.elastic.indytransformer.TransformerStats;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Transforms the advice classes of the compile source roots of the project in place, running in the build JVM.
+ * <p>
+ * The processed files are remembered in an {@link IncrementalIndex} in the {@link #cacheDirectory}: files which did not change
+ * since the previous build are skipped without reading them, so that the goal costs little more than listing the
+ * source files of modules without changes. The timings of the processed files are kept in the same directory, so that
+ * the next build starts with the most expensive files. If a {@link #resultCacheDirectory} is configured, the results are also
+ * kept by the content of the files, so that builds of other checkouts sharing the directory skip the files which were
+ * transformed before. The plugin classes are loaded once per build, therefore all modules of
+ * a reactor build share the same warmed up type solver.
+ */
+@Mojo(name = "transform", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
+public class TransformMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project.compileSourceRoots}", readonly = true, required = true)
+    List<String> compileSourceRoots;
+
+    /**
+     * Source roots within the build directory contain generated sources, which are not transformed.
+     */
+    @Parameter(defaultValue = "${project.build.directory}", readonly = true, required = true)
+    File buildDirectory;
+
+    /**
+     * The directory to store the index of the processed files in.
+     */
+    @Parameter(property = "indytransformer.cacheDirectory", defaultValue = "${project.build.directory}/indy-advice-transformer", required = true)
+    File cacheDirectory;
+
+    /**
+     * The number of files to transform in parallel, defaults to the number of available processors.
+     */
+    @Parameter(property = "indytransformer.threads")
+    Integer threads;
+
+    /**
+     * The directory to share the transformation results by file content in, e.g. across checkouts or CI jobs. Not used by default.
+     */
+    @Parameter(property = "indytransformer.resultCache")
+    File resultCacheDirectory;
+
+    /**
+     * The size in MiB after which the least recently used entries are evicted from the {@link #resultCacheDirectory}.
+     */
+    @Parameter(property = "indytransformer.resultCacheSize", defaultValue = "256")
+    long resultCacheSize;
+
+    /**
+     * The globs of the files to transform, relative to the source roots. Defaults to all java source files.
+     */
+    @Parameter
+    List<String> includes;
+
+    /**
+     * The globs of the files and directories to skip, relative to the source roots.
+     */
+    @Parameter
+    List<String> excludes;
+
+    @Parameter(property = "indytransformer.skip", defaultValue = "false")
+    boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping the advice transformation");
+            return;
+        }
+        List<Path> sourceRoots = new ArrayList<>();
+        Path generatedSources = buildDirectory.toPath().toAbsolutePath().normalize();
+        for (String sourceRoot : compileSourceRoots) {
+            Path root = Path.of(sourceRoot).toAbsolutePath().normalize();
+            if (Files.isDirectory(root) && !root.startsWith(generatedSources)) {
+                sourceRoots.add(root);
+            }
+        }
+        if (resultCacheDirectory != null && resultCacheSize < 1) {
+            throw new MojoExecutionException("The result cache size must be at least 1 MiB, but was " + resultCacheSize);
+        }
+        long resultCacheBytes;
+        try {
+            resultCacheBytes = Math.multiplyExact(resultCacheSize, 1024L * 1024);
+        } catch (ArithmeticException e) {
+            throw new MojoExecutionException("Invalid result cache size: " + resultCacheSize + " MiB");
+        }
+        if (sourceRoots.isEmpty()) {
+            getLog().debug("No source roots to transform");
+            return;
+        }
+
+        Summary summary = new Summary();
+        try {
+            IncrementalIndex index = IncrementalIndex.load(cacheDirectory.toPath());
+            FileCostModel costModel = FileCostModel.load(cacheDirectory.toPath());
+            int threadCount = threads != null ? threads : Runtime.getRuntime().availableProcessors();
+            SourceWalker walker = new SourceWalker(
+                    includes == null || includes.isEmpty() ? SourceWalker.DEFAULT_INCLUDES : includes,
+                    excludes == null ? List.of() : excludes,
+                    true);
+            TransformPipeline.FileSource source = () -> sourceRoots.stream().flatMap(root -> walk(walker, root, threadCount));
+            ResultCache resultCache = resultCacheDirectory != null
+                    ? new ResultCache(resultCacheDirectory.toPath(), resultCacheBytes, "")
+                    : null;
+            new TransformPipeline(threadCount, true, index, TransformerStats.DISABLED, null, AdviceTypeSolver.getShared(), costModel, resultCache)
+                    .run(source, summary);
+            index.pruneUnseen();
+            index.save();
+            costModel.save();
+            if (resultCache != null) {
+                resultCache.trim();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            throw new MojoExecutionException("Failed to transform the advice classes", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while transforming the advice classes", e);
+        }
+
+        if (summary.upToDate == summary.scanned) {
+            getLog().info("All " + summary.scanned + " java source files are up to date");
+        } else {
+            getLog().info("Transformed " + summary.transformed + " of " + summary.scanned + " java source files, "
+                          + summary.upToDate + " were up to date");
+        }
+        if (!summary.failed.isEmpty()) {
+            throw new MojoFailureException("Failed to transform " + summary.failed.size() + " java source files: " + summary.failed);
+        }
+    }
+
+    private static Stream<Path> walk(SourceWalker walker, Path root, int threads) {
+        try {
+            return walker.walk(root, threads);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class Summary implements Consumer<TransformPipeline.FileResult> {
+        private int scanned = 0;
+        private int transformed = 0;
+        private int upToDate = 0;
+        private final List<Path> failed = new ArrayList<>();
+
+        @Override
+        public void accept(TransformPipeline.FileResult result) {
+            scanned++;
+            if (result.failure() != null) {
+                failed.add(result.file());
+                getLog().error("Failed to transform " + result.file(), result.failure());
+            } else if (result.outcome() == TransformOutcome.UP_TO_DATE) {
+                upToDate++;
+            } else if (result.outcome() == TransformOutcome.TRANSFORMED) {
+                transformed++;
+                getLog().info("Transformed advice class(es) in " + result.file());
+            }
+        }
+    }
+}
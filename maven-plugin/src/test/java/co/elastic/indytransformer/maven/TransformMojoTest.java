@@ -0,0 +1,63 @@
+package co.elastic.indytransformer.maven;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransformMojoTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void transformsSourceRootsAndSkipsUpToDateFiles() throws Exception {
+        Path sourceRoot = Files.createDirectories(tempDir.resolve("src/main/java"));
+        Path generatedRoot = Files.createDirectories(tempDir.resolve("target/generated-sources/annotations"));
+        Path advice = copyResource("/WriteOnlyReturn.java", sourceRoot.resolve("WriteOnlyReturn.java"));
+        Path generatedAdvice = copyResource("/WriteOnlyReturn.java", generatedRoot.resolve("WriteOnlyReturn.java"));
+        byte[] generatedContent = Files.readAllBytes(generatedAdvice);
+
+        TransformMojo mojo = createMojo(sourceRoot, generatedRoot, tempDir.resolve("missing"));
+        mojo.execute();
+
+        byte[] expected;
+        try (InputStream in = TransformMojoTest.class.getResourceAsStream("/expected/WriteOnlyReturn.java")) {
+            expected = in.readAllBytes();
+        }
+        assertArrayEquals(expected, Files.readAllBytes(advice));
+        assertArrayEquals(generatedContent, Files.readAllBytes(generatedAdvice));
+        assertTrue(Files.exists(tempDir.resolve("target/indy-advice-transformer/incremental-index.tsv")));
+
+        // the file is not touched again by later builds
+        FileTime lastModified = FileTime.fromMillis(Files.getLastModifiedTime(advice).toMillis() - 10_000);
+        Files.setLastModifiedTime(advice, lastModified);
+        createMojo(sourceRoot, generatedRoot).execute();
+        assertEquals(lastModified, Files.getLastModifiedTime(advice));
+        assertArrayEquals(expected, Files.readAllBytes(advice));
+    }
+
+    private TransformMojo createMojo(Path... sourceRoots) {
+        TransformMojo mojo = new TransformMojo();
+        mojo.compileSourceRoots = Arrays.stream(sourceRoots).map(Path::toString).toList();
+        mojo.buildDirectory = tempDir.resolve("target").toFile();
+        mojo.cacheDirectory = tempDir.resolve("target/indy-advice-transformer").toFile();
+        mojo.threads = 2;
+        return mojo;
+    }
+
+    private static Path copyResource(String resource, Path target) throws Exception {
+        try (InputStream in = TransformMojoTest.class.getResourceAsStream(resource)) {
+            Files.copy(in, target);
+        }
+        return target;
+    }
+}